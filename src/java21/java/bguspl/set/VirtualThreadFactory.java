@@ -0,0 +1,17 @@
+package bguspl.set;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A factory of virtual threads, for running thousands of players without an operating system thread each. Only
+ * compiled by the java21 build profile, and created through ThreadFactories.virtual.
+ */
+public class VirtualThreadFactory implements ThreadFactory {
+
+    private final ThreadFactory factory = Thread.ofVirtual().factory();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        return factory.newThread(runnable);
+    }
+}
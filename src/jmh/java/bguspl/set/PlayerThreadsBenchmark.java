@@ -0,0 +1,77 @@
+package bguspl.set;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Compares whole headless games (see Tournament) with the players on platform threads and on virtual threads, over a
+ * growing number of computer players. Each game runs on virtual time, with the computer players at an explicit pace
+ * so that the rounds end by sets rather than by the clock skipping to the reshuffle timeouts, and the score is the
+ * cost of the threads and of the game logic rather than of the freezes and timeouts.
+ * Run with: mvn -P java21,jmh package -DskipTests && java -jar target/benchmarks.jar PlayerThreadsBenchmark
+ * (without the java21 profile the virtual thread runs fail, as virtual threads are not available).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlayerThreadsBenchmark {
+
+    /**
+     * The kind of threads the players run on: "platform" or "virtual".
+     */
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    /**
+     * The number of computer players in each game.
+     */
+    @Param({"4", "64", "1024"})
+    public int players;
+
+    private Logger logger;
+    private Config config;
+    private Util util;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if (threads.equals("virtual") && ThreadFactories.virtual() == null)
+            throw new IllegalStateException("virtual threads need Java 21 and the java21 build profile");
+
+        Properties properties = new Properties();
+        properties.put("LogLevel", "OFF");
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", Integer.toString(players));
+        properties.put("VirtualTime", "True");
+        properties.put("ComputerActionsPerSecond", Double.toString(Config.VIRTUAL_TIME_COMPUTER_ACTIONS_PER_SECOND));
+        properties.put("VirtualThreads", Boolean.toString(threads.equals("virtual")));
+        logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        config = new Config(logger, properties);
+        util = new UtilImpl(config);
+    }
+
+    /**
+     * Plays a whole game. The throughput is in games per second.
+     */
+    @Benchmark
+    public int game() {
+        return Tournament.playOnce(logger, config, util);
+    }
+}
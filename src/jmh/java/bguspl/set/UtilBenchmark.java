@@ -0,0 +1,163 @@
+package bguspl.set;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Benchmarks of the set operations in UtilImpl, over a grid of deck geometries and input sizes.
+ * Run with: mvn -P jmh package -DskipTests && java -jar target/benchmarks.jar UtilBenchmark -prof gc
+ * (the gc profiler adds the allocation rate per operation, gc.alloc.rate.norm, to the results).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilBenchmark {
+
+    /**
+     * The deck geometry as FeatureSize x FeatureCount.
+     */
+    @Param({"3x4", "3x6", "3x8", "4x3", "4x4", "5x3"})
+    public String geometry;
+
+    /**
+     * The number of cards searched: a table size, or "full" for the whole deck (capped by the deck size).
+     */
+    @Param({"12", "21", "81", "full"})
+    public String cards;
+
+    /**
+     * The number of candidate arrays cycled through by the testSet benchmarks.
+     */
+    private static final int CANDIDATES = 1024;
+
+    private UtilImpl util;
+    private List<Integer> deck;
+    private int[] deckArray;
+    private int[][] candidates;
+    private int[] triples;
+    private final long[] batchResult = new long[CANDIDATES / 64];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] dimensions = geometry.split("x");
+        Properties properties = new Properties();
+        properties.put("FeatureSize", dimensions[0]);
+        properties.put("FeatureCount", dimensions[1]);
+        Config config = new Config(Logger.getAnonymousLogger(), properties);
+        util = new UtilImpl(config);
+
+        Random random = new Random(1);
+        List<Integer> all = new ArrayList<>();
+        for (int card = 0; card < config.deckSize; ++card)
+            all.add(card);
+        Collections.shuffle(all, random);
+        int size = cards.equals("full") ? config.deckSize : Math.min(Integer.parseInt(cards), config.deckSize);
+        deck = new ArrayList<>(all.subList(0, size));
+        deckArray = deck.stream().mapToInt(Integer::intValue).toArray();
+
+        // random candidates of featureSize cards (mostly not sets, as in a real game)
+        candidates = new int[CANDIDATES][config.featureSize];
+        triples = new int[CANDIDATES * 3];
+        for (int i = 0; i < CANDIDATES; ++i) {
+            for (int j = 0; j < config.featureSize; ++j)
+                candidates[i][j] = deckArray[random.nextInt(size)];
+            for (int j = 0; j < 3; ++j)
+                triples[i * 3 + j] = deckArray[random.nextInt(size)];
+        }
+    }
+
+    private int nextCandidate() {
+        next = (next + 1) & (CANDIDATES - 1);
+        return next;
+    }
+
+    @Benchmark
+    public boolean testSet() {
+        return util.testSet(candidates[nextCandidate()]);
+    }
+
+    @Benchmark
+    public boolean testSetPrimitive() {
+        int i = nextCandidate() * 3;
+        return util.testSet(triples[i], triples[i + 1], triples[i + 2]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CANDIDATES)
+    public long[] testSetsBatch() {
+        util.testSets(triples, CANDIDATES, batchResult);
+        return batchResult;
+    }
+
+    @Benchmark
+    public int[][] cardsToFeatures() {
+        return util.cardsToFeatures(candidates[nextCandidate()]);
+    }
+
+    @Benchmark
+    public List<int[]> findSets() {
+        return util.findSets(deck, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public List<int[]> findSetsSerial() {
+        return util.findSets(deck, Integer.MAX_VALUE, false);
+    }
+
+    @Benchmark
+    public List<int[]> findSetsParallel() {
+        return util.findSets(deck, Integer.MAX_VALUE, true);
+    }
+
+    @Benchmark
+    public List<int[]> findFirstSet() {
+        return util.findSets(deck, 1);
+    }
+
+    @Benchmark
+    public int countSets() {
+        return util.countSets(deckArray, deckArray.length);
+    }
+
+    @Benchmark
+    public int[] countSetsPerCard() {
+        return util.countSetsPerCard(deckArray, deckArray.length);
+    }
+
+    @Benchmark
+    public void forEachSet(Blackhole blackhole) {
+        util.forEachSet(deckArray, deckArray.length, set -> {
+            blackhole.consume(set);
+            return true;
+        });
+    }
+
+    @Benchmark
+    public long streamSets() {
+        return util.streamSets(deckArray, deckArray.length).count();
+    }
+}
@@ -0,0 +1,65 @@
+package bguspl.set;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * The source of time for the game: every timeout, freeze and delay is measured and waited for through this interface,
+ * so the game can run either on the wall clock or on a virtual clock that skips idle time. The waits are on
+ * java.util.concurrent locks rather than object monitors, as a virtual thread waiting on a monitor holds on to its
+ * carrier thread before Java 24 (see ThreadFactories).
+ */
+public interface Clock {
+
+    /**
+     * @return - the current time in milliseconds.
+     */
+    long currentTimeMillis();
+
+    /**
+     * Suspends the calling thread for the given amount of time (see Thread.sleep).
+     *
+     * @param millis - the time to sleep in milliseconds (nothing happens if it is not positive).
+     * @throws InterruptedException - if the thread was interrupted while sleeping.
+     */
+    void sleep(long millis) throws InterruptedException;
+
+    /**
+     * Waits on a condition until it is signalled or until the given amount of time passes (see Condition.await). Like
+     * Condition.await it may return early, so the condition waited for must be checked again.
+     *
+     * @param lock      - the lock of the condition, which must be held by the calling thread.
+     * @param condition - the condition to wait on.
+     * @param millis    - the maximal time to wait in milliseconds (nothing happens if it is not positive).
+     * @throws InterruptedException - if the thread was interrupted while waiting.
+     */
+    void await(Lock lock, Condition condition, long millis) throws InterruptedException;
+
+    /**
+     * Waits on a condition until it is signalled, with no timeout (see Condition.await). Like Condition.await it may
+     * return early, so the condition waited for must be checked again.
+     *
+     * @param lock      - the lock of the condition, which must be held by the calling thread.
+     * @param condition - the condition to wait on.
+     * @throws InterruptedException - if the thread was interrupted while waiting.
+     */
+    void await(Lock lock, Condition condition) throws InterruptedException;
+
+    /**
+     * Wakes up all the threads waiting on a condition (see Condition.signalAll).
+     *
+     * @param condition - the condition waited on, whose lock must be held by the calling thread.
+     */
+    void signalAll(Condition condition);
+
+    /**
+     * Registers the calling thread as a participant in the game timing. A virtual clock only moves forward when all the
+     * participants are waiting for it (in sleep or await), so participants must not block in any other way for long.
+     */
+    void register();
+
+    /**
+     * Removes the calling thread from the participants in the game timing (see register).
+     */
+    void unregister();
+}
@@ -36,6 +36,21 @@ public class Config {
      */
     public final int deckSize;
 
+    /**
+     * The maximal number of card collections whose sets are remembered by the set search cache (0 disables the cache)
+     */
+    public final int setCacheSize;
+
+    /**
+     * Whether the set search cache treats card collections that differ only by the order of the features as the same
+     */
+    public final boolean setCacheCanonical;
+
+    /**
+     * The directory where the precomputed card tables of each deck geometry are kept between runs (empty to disable)
+     */
+    public final String tableCacheDirectory;
+
     /**
      * The number of human players in the game.
      */
@@ -46,6 +61,20 @@ public class Config {
      */
     public final int computerPlayers;
 
+    /**
+     * The number of key presses each computer player makes per second (0 for as many as the player can handle, which
+     * on virtual time becomes VIRTUAL_TIME_COMPUTER_ACTIONS_PER_SECOND)
+     */
+    public final double computerActionsPerSecond;
+
+    /**
+     * The computer player rate used on virtual time instead of 0: one key press per virtual millisecond. Unpaced key
+     * presses take no virtual time at all, so the computer players would either stop the time (when they keep busy,
+     * e.g. with no freezes and no set on the table) or, if they did not take part in it, let it skip to the next
+     * timeout whenever the player threads block for a moment.
+     */
+    public static final double VIRTUAL_TIME_COMPUTER_ACTIONS_PER_SECOND = 1000;
+
     /**
      * The total number of players (human + computer) in the game
      */
@@ -81,6 +110,26 @@ public class Config {
      */
     public final long tableDelayMillis;
 
+    /**
+     * The number of milliseconds to delay before placing or removing several cards at once (a deal, a set, a reshuffle)
+     */
+    public final long tableBatchDelayMillis;
+
+    /**
+     * Whether the game runs on virtual time, which skips ahead whenever the dealer waits (instead of the wall clock)
+     */
+    public final boolean virtualTime;
+
+    /**
+     * Whether players settle their own set claims, taking the cards with compare-and-set, instead of the dealer
+     */
+    public final boolean optimisticClaims;
+
+    /**
+     * Whether the player and computer player threads are virtual threads (needs Java 21 and the java21 build profile)
+     */
+    public final boolean virtualThreads;
+
     /**
      * The number of milliseconds to pause at the end of the game before closing
      */
@@ -155,7 +204,7 @@ public class Config {
      * @param filename - the name of the configuration file.
      * @return - a properties object with the configuration file contents.
      */
-    private static Properties loadProperties(String filename, Logger logger) {
+    static Properties loadProperties(String filename, Logger logger) {
 
         Properties properties = new Properties();
 
@@ -197,6 +246,9 @@ public class Config {
         featureSize = Integer.parseInt(properties.getProperty("FeatureSize", "3"));
         featureCount = Integer.parseInt(properties.getProperty("FeatureCount", "4"));
         deckSize = (int) Math.pow(featureSize, featureCount);
+        setCacheSize = Integer.parseInt(properties.getProperty("SetCacheSize", "0"));
+        setCacheCanonical = Boolean.parseBoolean(properties.getProperty("SetCacheCanonical", "False"));
+        tableCacheDirectory = properties.getProperty("TableCacheDirectory", "").trim();
 
         // gameplay settings
         humanPlayers = Integer.parseInt(properties.getProperty("HumanPlayers", "2"));
@@ -209,6 +261,14 @@ public class Config {
         pointFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PointFreezeSeconds", "1")) * 1000.0);
         penaltyFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PenaltyFreezeSeconds", "3")) * 1000.0);
         tableDelayMillis = (long) (Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) * 1000.0);
+        tableBatchDelayMillis = (long) (Double.parseDouble(properties.getProperty("TableBatchDelaySeconds",
+                Double.toString(tableDelayMillis / 1000.0))) * 1000.0);
+        virtualTime = Boolean.parseBoolean(properties.getProperty("VirtualTime", "False"));
+        double actionsPerSecond = Double.parseDouble(properties.getProperty("ComputerActionsPerSecond", "0"));
+        computerActionsPerSecond = virtualTime && actionsPerSecond <= 0
+                ? VIRTUAL_TIME_COMPUTER_ACTIONS_PER_SECOND : actionsPerSecond;
+        optimisticClaims = Boolean.parseBoolean(properties.getProperty("OptimisticClaims", "False"));
+        virtualThreads = Boolean.parseBoolean(properties.getProperty("VirtualThreads", "False"));
         endGamePauseMillies = (long) (Double.parseDouble(properties.getProperty("EndGamePauseSeconds", "5")) * 1000.0);
 
         // ui settings
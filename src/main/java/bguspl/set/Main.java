@@ -44,6 +44,7 @@ public class Main {
         ThreadLogger.logStart(logger, Thread.currentThread().getName());
         Config config = new Config(logger, "config.properties");
         Util util = new UtilImpl(config);
+        if (config.setCacheSize > 0) util = new UtilCacheDecorator(logger, config, util);
 
         Player[] players = new Player[config.players];
         UserInterface ui = null;
@@ -57,7 +58,8 @@ public class Main {
         }
         ui = new UserInterfaceDecorator(logger, util, ui);
 
-        Env env = new Env(logger, config, ui, util);
+        Clock clock = config.virtualTime ? new VirtualClock() : new SystemClock();
+        Env env = new Env(logger, config, ui, util, clock, ThreadFactories.forConfig(logger, config));
 
         // create the game entities
         Table table = new Table(env);
@@ -77,6 +79,10 @@ public class Main {
         } finally {
             logger.severe("thanks for playing... it was fun!");
             System.out.println("Thanks for playing... it was fun!");
+            if (util instanceof UtilCacheDecorator) {
+                UtilCacheDecorator cache = (UtilCacheDecorator) util;
+                logger.info("set cache hits: " + cache.hits() + " misses: " + cache.misses());
+            }
             ThreadLogger.logStop(logger, Thread.currentThread().getName());
             if (!xButtonPressed) env.ui.dispose();
             for (Handler h : logger.getHandlers()) h.flush();
@@ -0,0 +1,132 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class persists the precomputed card tables of UtilImpl, so that the next process with the same deck geometry
+ * loads them instead of computing them again. There is a single file per geometry, made of a header and the tables:
+ * <pre>
+ *   magic, version, featureSize, featureCount, deckSize, featureBits, table count, checksum  (one long each)
+ *   packed features  (deckSize longs)
+ *   feature planes   (deckSize longs, only for a feature size of 3)
+ * </pre>
+ * The longs are written in the native byte order, so a file written on a machine with another byte order fails the
+ * magic check and is simply rebuilt, and so is a file whose tables do not match the checksum. The file is read through
+ * a memory mapping and copied in bulk into tables on the heap, so every process keeps its own copy of the tables
+ * (saving the time to compute them, not the memory). It is written to a temporary file that is then moved in place,
+ * so readers never see a partial file.
+ */
+final class SetTableFile {
+
+    private static final long MAGIC = 0x5345545441424C45L; // "SETTABLE"
+
+    /**
+     * The version of the file format (and of the table layout). Must be incremented whenever either one changes.
+     */
+    private static final long VERSION = 2;
+
+    private static final int HEADER_LONGS = 8;
+
+    private SetTableFile() {
+    }
+
+    /**
+     * @param directory - the directory holding the table files.
+     * @param config    - the game configuration (only the deck geometry matters).
+     * @return - the path of the table file of the deck geometry.
+     */
+    static Path path(String directory, Config config) {
+        return Paths.get(directory, "set-tables-" + config.featureSize + "x" + config.featureCount + ".bin");
+    }
+
+    /**
+     * Loads the tables of a deck geometry.
+     *
+     * @param file        - the table file.
+     * @param config      - the game configuration.
+     * @param featureBits - the number of bits per feature in the packed features table.
+     * @param tables      - the number of tables expected in the file.
+     * @return - the tables, or null if the file is missing, unreadable, corrupt or does not match the geometry.
+     */
+    static long[][] load(Path file, Config config, int featureBits, int tables) {
+        if (!Files.isRegularFile(file)) return null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long expectedSize = (HEADER_LONGS + (long) tables * config.deckSize) * Long.BYTES;
+            if (channel.size() != expectedSize) return null;
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, expectedSize);
+            LongBuffer longs = mapped.order(ByteOrder.nativeOrder()).asLongBuffer();
+            if (longs.get() != MAGIC || longs.get() != VERSION || longs.get() != config.featureSize
+                    || longs.get() != config.featureCount || longs.get() != config.deckSize
+                    || longs.get() != featureBits || longs.get() != tables)
+                return null;
+            long checksum = longs.get();
+            long[][] result = new long[tables][config.deckSize];
+            for (long[] table : result)
+                longs.get(table);
+            return checksum(result) == checksum ? result : null;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stores the tables of a deck geometry. Failures are ignored (the tables are computed again next time).
+     *
+     * @param file        - the table file.
+     * @param config      - the game configuration.
+     * @param featureBits - the number of bits per feature in the packed features table.
+     * @param tables      - the tables to store, each one of deckSize entries.
+     */
+    static void store(Path file, Config config, int featureBits, long[]... tables) {
+        long bytes = (HEADER_LONGS + (long) tables.length * config.deckSize) * Long.BYTES;
+        if (bytes > Integer.MAX_VALUE) return;
+        Path temp = null;
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) bytes).order(ByteOrder.nativeOrder());
+                LongBuffer longs = buffer.asLongBuffer();
+                longs.put(MAGIC).put(VERSION).put(config.featureSize).put(config.featureCount).put(config.deckSize)
+                        .put(featureBits).put(tables.length).put(checksum(tables));
+                for (long[] table : tables)
+                    longs.put(table);
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (temp != null) try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * @return - a hash of all the entries of the tables, in order.
+     */
+    private static long checksum(long[][] tables) {
+        long hash = VERSION;
+        for (long[] table : tables)
+            for (long value : table)
+                hash = (Long.rotateLeft(hash, 7) ^ value) * 0x9E3779B97F4A7C15L;
+        return hash;
+    }
+}
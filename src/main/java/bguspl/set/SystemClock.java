@@ -0,0 +1,44 @@
+package bguspl.set;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * The implementation of the Clock interface over the wall clock.
+ */
+public class SystemClock implements Clock {
+
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        if (millis > 0) Thread.sleep(millis);
+    }
+
+    @Override
+    public void await(Lock lock, Condition condition, long millis) throws InterruptedException {
+        if (millis > 0) condition.await(millis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void await(Lock lock, Condition condition) throws InterruptedException {
+        condition.await();
+    }
+
+    @Override
+    public void signalAll(Condition condition) {
+        condition.signalAll();
+    }
+
+    @Override
+    public void register() {
+    }
+
+    @Override
+    public void unregister() {
+    }
+}
@@ -0,0 +1,55 @@
+package bguspl.set;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+/**
+ * Creates the thread factories that start the player and computer player threads. Platform threads are always
+ * available. Virtual threads need Java 21: the factory that creates them, VirtualThreadFactory, is only compiled by
+ * the java21 build profile (mvn -P java21 package), and is looked up by name so the rest of the game builds on Java 8.
+ * All the waits of the game go through Clock.await on java.util.concurrent locks, which release the carrier thread of
+ * a waiting virtual thread. Object monitors would pin it to its carrier before Java 24, and the scheduler adds
+ * carriers only up to jdk.virtualThreadScheduler.maxPoolSize (256 by default), so a game with more waiting players
+ * than that would stall. The monitors left (the tokens of a player, the set queue) guard short sections that never
+ * wait.
+ */
+public final class ThreadFactories {
+
+    /**
+     * The name of the class that creates virtual threads (see src/java21/java).
+     */
+    private static final String VIRTUAL_THREAD_FACTORY = "bguspl.set.VirtualThreadFactory";
+
+    private ThreadFactories() {
+    }
+
+    /**
+     * @return - a factory of platform (operating system) threads.
+     */
+    public static ThreadFactory platform() {
+        return Thread::new;
+    }
+
+    /**
+     * @return - a factory of virtual threads, or null if this build or this JVM does not support them.
+     */
+    public static ThreadFactory virtual() {
+        try {
+            return (ThreadFactory) Class.forName(VIRTUAL_THREAD_FACTORY).getConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return - the thread factory chosen by the configuration, falling back to platform threads if virtual threads
+     * are asked for but are not supported.
+     */
+    public static ThreadFactory forConfig(Logger logger, Config config) {
+        if (!config.virtualThreads) return platform();
+        ThreadFactory factory = virtual();
+        if (factory != null) return factory;
+        logger.severe("virtual threads need Java 21 and the java21 build profile, using platform threads instead.");
+        return platform();
+    }
+}
@@ -0,0 +1,238 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs many independent headless games of computer players concurrently in a single JVM, and reports the results and
+ * the throughput. Each game has its own Env, Table, Dealer and players, no user interface, and its own virtual clock,
+ * so games run as fast as the cores allow and do not depend on each other's timing.
+ * <p>
+ * Usage: Tournament [games] [parallel games] [configuration file]
+ * <br>
+ * The defaults are twice the number of cores, the number of cores, and config.properties. The configuration is used as
+ * is, except that all the players are computer players, hints are off and the games run on virtual time. Unless the
+ * configuration sets a ComputerActionsPerSecond rate, the computer players press
+ * Config.VIRTUAL_TIME_COMPUTER_ACTIONS_PER_SECOND keys per second, as unpaced key presses take no virtual time. With
+ * VirtualThreads=True (and the java21 build profile) the players run on virtual threads, so games of thousands of
+ * computer players do not need thousands of operating system threads.
+ */
+public class Tournament {
+
+    /**
+     * The outcome of a single game.
+     */
+    private static final class GameResult {
+
+        private final int[] scores;
+        private final long virtualMillis;
+        private final long wallNanos;
+
+        GameResult(int[] scores, long virtualMillis, long wallNanos) {
+            this.scores = scores;
+            this.virtualMillis = virtualMillis;
+            this.wallNanos = wallNanos;
+        }
+
+        int sets() {
+            int sets = 0;
+            for (int score : scores)
+                sets += score;
+            return sets;
+        }
+
+        int bestScore() {
+            int best = 0;
+            for (int score : scores)
+                best = Math.max(best, score);
+            return best;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 2 * cores;
+        int parallelism = args.length > 1 ? Integer.parseInt(args[1]) : cores;
+        String configFilename = args.length > 2 ? args[2] : "config.properties";
+
+        Logger logger = Logger.getLogger("SetTournamentLogger");
+        logger.setUseParentHandlers(false);
+        Properties properties = Config.loadProperties(configFilename, logger);
+        int players = Integer.parseInt(properties.getProperty("HumanPlayers", "2"))
+                + Integer.parseInt(properties.getProperty("ComputerPlayers", "0"));
+        properties.setProperty("HumanPlayers", "0");
+        properties.setProperty("ComputerPlayers", Integer.toString(players));
+        properties.setProperty("Hints", "False");
+        properties.setProperty("VirtualTime", "True");
+        if (Double.parseDouble(properties.getProperty("ComputerActionsPerSecond", "0")) <= 0)
+            properties.setProperty("ComputerActionsPerSecond",
+                    Double.toString(Config.VIRTUAL_TIME_COMPUTER_ACTIONS_PER_SECOND));
+        Config config = new Config(logger, properties);
+        logger.setLevel(Level.OFF);
+
+        Util util = new UtilImpl(config);
+        if (config.setCacheSize > 0) util = new UtilCacheDecorator(logger, config, util);
+
+        System.out.println("running " + games + " games of " + config.players + " players, " + parallelism + " at a time");
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        List<Future<GameResult>> futures = new ArrayList<>(games);
+        long start = System.nanoTime();
+        for (int i = 0; i < games; ++i) {
+            Util gameUtil = util;
+            futures.add(executor.submit(() -> play(logger, config, gameUtil)));
+        }
+
+        List<GameResult> results = new ArrayList<>(games);
+        for (int i = 0; i < games; ++i) {
+            try {
+                GameResult result = futures.get(i).get();
+                results.add(result);
+                System.out.printf("game %d: scores %s, %.1f virtual seconds, %.3f seconds%n", i + 1,
+                        Arrays.toString(result.scores), result.virtualMillis / 1000.0, result.wallNanos / 1e9);
+            } catch (ExecutionException e) {
+                System.out.println("game " + (i + 1) + " failed: " + e.getCause());
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        report(config, results, elapsed);
+    }
+
+    /**
+     * Plays a single game on the calling thread, with players on the threads chosen by the configuration.
+     *
+     * @return - the number of sets found in the game.
+     */
+    static int playOnce(Logger logger, Config config, Util util) {
+        return play(logger, config, util).sets();
+    }
+
+    /**
+     * Plays a single game on the calling thread.
+     */
+    private static GameResult play(Logger logger, Config config, Util util) {
+        VirtualClock clock = new VirtualClock();
+        try {
+            Env env = new Env(logger, config, new HeadlessUserInterface(), util, clock,
+                    ThreadFactories.forConfig(logger, config));
+            Player[] players = new Player[config.players];
+            Table table = new Table(env);
+            Dealer dealer = new Dealer(env, table, players);
+            for (int i = 0; i < players.length; i++)
+                players[i] = new Player(env, dealer, table, i, false);
+
+            long start = System.nanoTime();
+            dealer.run();
+            long wallNanos = System.nanoTime() - start;
+
+            int[] scores = new int[players.length];
+            for (int i = 0; i < players.length; i++)
+                scores[i] = players[i].score();
+            return new GameResult(scores, clock.currentTimeMillis(), wallNanos);
+        } finally {
+            clock.close();
+        }
+    }
+
+    private static void report(Config config, List<GameResult> results, long elapsedNanos) {
+        if (results.isEmpty()) {
+            System.out.println("no game completed");
+            return;
+        }
+        double seconds = elapsedNanos / 1e9;
+        long sets = 0, virtualMillis = 0;
+        int minSets = Integer.MAX_VALUE, maxSets = 0;
+        int[] wins = new int[config.players];
+        int ties = 0;
+        for (GameResult result : results) {
+            int gameSets = result.sets();
+            sets += gameSets;
+            minSets = Math.min(minSets, gameSets);
+            maxSets = Math.max(maxSets, gameSets);
+            virtualMillis += result.virtualMillis;
+
+            int best = result.bestScore(), winners = 0;
+            for (int i = 0; i < wins.length; ++i)
+                if (result.scores[i] == best) {
+                    ++wins[i];
+                    ++winners;
+                }
+            if (winners > 1) ++ties;
+        }
+
+        System.out.println();
+        System.out.printf("games: %d in %.3f seconds (%.2f games/sec)%n", results.size(), seconds, results.size() / seconds);
+        System.out.printf("sets: %d (%.1f sets/sec), per game: avg %.1f min %d max %d%n", sets, sets / seconds,
+                (double) sets / results.size(), minSets, maxSets);
+        System.out.printf("average game length: %.1f virtual seconds%n", virtualMillis / 1000.0 / results.size());
+        for (int i = 0; i < wins.length; ++i)
+            System.out.printf("%s: %d wins (%.1f%%)%n", config.playerNames[i], wins[i], 100.0 * wins[i] / results.size());
+        System.out.println("ties: " + ties);
+    }
+
+    /**
+     * A user interface that shows nothing.
+     */
+    private static final class HeadlessUserInterface implements UserInterface {
+
+        @Override
+        public void placeCard(int card, int slot) {
+        }
+
+        @Override
+        public void removeCard(int slot) {
+        }
+
+        @Override
+        public void placeToken(int player, int slot) {
+        }
+
+        @Override
+        public void removeTokens() {
+        }
+
+        @Override
+        public void removeTokens(int slot) {
+        }
+
+        @Override
+        public void removeToken(int player, int slot) {
+        }
+
+        @Override
+        public void setCountdown(long millies, boolean warn) {
+        }
+
+        @Override
+        public void setElapsed(long millies) {
+        }
+
+        @Override
+        public void setFreeze(int player, long millies) {
+        }
+
+        @Override
+        public void setScore(int player, int score) {
+        }
+
+        @Override
+        public void announceWinner(int[] players) {
+        }
+
+        @Override
+        public void dispose() {
+        }
+    }
+}
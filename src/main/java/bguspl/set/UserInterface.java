@@ -18,6 +18,27 @@ public interface UserInterface {
      */
     void removeCard(int slot);
 
+    /**
+     * Draw the card images of several cards at once, as a single update of the screen.
+     * @param cards - the card ids.
+     * @param slots - the slot of each card (for grid; slot = row*row.length + column).
+     * @param count - the number of cards to draw (the first count entries of cards and slots).
+     */
+    default void placeCards(int[] cards, int[] slots, int count) {
+        for (int i = 0; i < count; i++)
+            placeCard(cards[i], slots[i]);
+    }
+
+    /**
+     * Draw an empty card image in several slots at once, as a single update of the screen.
+     * @param slots - the slot numbers (for grid; slot = row*row.length + column).
+     * @param count - the number of slots to empty (the first count entries of slots).
+     */
+    default void removeCards(int[] slots, int count) {
+        for (int i = 0; i < count; i++)
+            removeCard(slots[i]);
+    }
+
     /**
      * Draw a player name text in the specified slot.
      * @param player - the card id.
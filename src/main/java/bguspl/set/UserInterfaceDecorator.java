@@ -33,6 +33,22 @@ public class UserInterfaceDecorator implements UserInterface {
         if (ui != null) ui.removeCard(slot);
     }
 
+    @Override
+    public void placeCards(int[] cards, int[] slots, int count) {
+        for (int i = 0; i < count; i++)
+            logger.severe("placing card " + cards[i] + " in slot " + slots[i]);
+        util.spin();
+        if (ui != null) ui.placeCards(cards, slots, count);
+    }
+
+    @Override
+    public void removeCards(int[] slots, int count) {
+        for (int i = 0; i < count; i++)
+            logger.severe("removing card from slot " + slots[i]);
+        util.spin();
+        if (ui != null) ui.removeCards(slots, count);
+    }
+
     @Override
     public void placeToken(int player, int slot) {
         logger.severe("player " + (player + 1) + " placing token on slot " + slot);
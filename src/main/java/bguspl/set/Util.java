@@ -1,6 +1,7 @@
 package bguspl.set;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * An interface for general utilities provided for convenience.
@@ -31,6 +32,34 @@ public interface Util {
      */
     boolean testSet(int[] cards);
 
+    /**
+     * Checks if three cards form a legal set (same as testSet(int[]) without the array).
+     *
+     * @param first  - the first card id.
+     * @param second - the second card id.
+     * @param third  - the third card id.
+     * @return - true iff the three cards form a legal set.
+     */
+    boolean testSet(int first, int second, int third);
+
+    /**
+     * Checks many candidate triples of cards at once (with word-wide bit operations for decks with a feature size of 3).
+     *
+     * @param triples - a flat array of card ids, 3 consecutive ids per candidate.
+     * @param count   - the number of candidates to check.
+     * @param result  - a bitmap of at least (count + 63) / 64 words, where bit i (of word i / 64) is set iff candidate i
+     *                is a legal set. Bits beyond count in the last word are cleared.
+     */
+    void testSets(int[] triples, int count, long[] result);
+
+    /**
+     * Finds the card that completes the given cards to a legal set.
+     *
+     * @param cards - config.featureSize - 1 card ids.
+     * @return - the id of the only card that forms a legal set with the given cards, or -1 if there is none.
+     */
+    int completeSet(int[] cards);
+
     /**
      * Finds and returns up to count sets in the given collection of cards.
      *
@@ -40,6 +69,57 @@ public interface Util {
      */
     List<int[]> findSets(List<Integer> deck, int count);
 
+    /**
+     * Receives the sets enumerated by forEachSet one at a time.
+     */
+    interface SetVisitor {
+
+        /**
+         * @param set - the card ids of a legal set, sorted. The array is reused for the next set, so it must be copied
+         *            if it is kept after the call returns.
+         * @return - true to go on with the enumeration, false to stop it.
+         */
+        boolean visit(int[] set);
+    }
+
+    /**
+     * Enumerates the legal sets in a collection of cards without building a list of results.
+     *
+     * @param cards   - an array of card ids.
+     * @param length  - the number of cards (from the start of the array) to search.
+     * @param visitor - receives each set found, and decides whether to go on.
+     */
+    void forEachSet(int[] cards, int length, SetVisitor visitor);
+
+    /**
+     * Lazily streams the legal sets in a collection of cards. Sets are searched only as they are consumed, and the
+     * stream can be split for parallel consumption (call parallel() on it).
+     *
+     * @param cards  - an array of card ids (must not be modified while the stream is consumed).
+     * @param length - the number of cards (from the start of the array) to search.
+     * @return - a stream of integer arrays, each one contains the card ids of a legal set, sorted.
+     */
+    Stream<int[]> streamSets(int[] cards, int length);
+
+    /**
+     * Counts the legal sets in a collection of cards without allocating (after the first call on a thread).
+     *
+     * @param cards  - an array of card ids.
+     * @param length - the number of cards (from the start of the array) to search.
+     * @return - the number of legal sets among the cards.
+     */
+    int countSets(int[] cards, int length);
+
+    /**
+     * Counts, for every card in a collection, the number of legal sets in the collection that it belongs to.
+     * All the counts are computed in a single pass over the sets, and only the result array is allocated.
+     *
+     * @param cards  - an array of card ids.
+     * @param length - the number of cards (from the start of the array) to search.
+     * @return - an array of length counts, where entry i is the number of sets that cards[i] belongs to.
+     */
+    int[] countSetsPerCard(int[] cards, int length);
+
     /**
      * Spin a random number of times (for debugging/testing).
      */
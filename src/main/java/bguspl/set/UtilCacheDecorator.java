@@ -0,0 +1,345 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * A Util decorator that remembers the sets found in the most recently searched collections of cards, by findSets,
+ * forEachSet (which the dealer runs to tell if any set is left in the game) and countSets.
+ * A collection is identified by its card presence bitmap (e.g. an 81 bit key for the default deck), so the order of
+ * the cards in the searched list does not matter. Optionally, collections that differ only by the order of the
+ * features on the cards share a single entry: the collection is mapped to a canonical form (the permutation of the
+ * features giving the smallest bitmap), searched in that form, and the sets found are mapped back.
+ * All the other operations are passed to the decorated Util as is.
+ */
+public class UtilCacheDecorator implements Util {
+
+    /**
+     * The largest size of the card permutation tables (featureCount! * deckSize entries each) for which the
+     * collections are canonicalized.
+     */
+    private static final int MAX_PERMUTATION_ENTRIES = 1 << 20;
+
+    private final Util util;
+    private final int deckSize;
+    private final int featureSize;
+
+    /**
+     * The cached results, in access order (the least recently used entry is evicted first).
+     */
+    private final Map<Key, CachedSets> cache;
+
+    /**
+     * permutedCard[p][card] is the card with the features of card reordered by permutation p, and
+     * originalCard[p] is the inverse mapping. Both are null when the collections are not canonicalized.
+     */
+    private final int[][] permutedCard;
+    private final int[][] originalCard;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public UtilCacheDecorator(Logger logger, Config config, Util util) {
+        this.util = util;
+        this.deckSize = config.deckSize;
+        this.featureSize = config.featureSize;
+        int capacity = Math.max(1, config.setCacheSize);
+        cache = new LinkedHashMap<Key, CachedSets>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedSets> eldest) {
+                return size() > capacity;
+            }
+        };
+
+        long permutations = 1;
+        for (int i = 2; i <= config.featureCount; ++i)
+            permutations *= i;
+        if (config.setCacheCanonical && permutations * config.deckSize > MAX_PERMUTATION_ENTRIES) {
+            logger.severe("warning: too many feature permutations (" + permutations + ") to canonicalize the set cache.");
+            permutedCard = originalCard = null;
+        } else if (config.setCacheCanonical) {
+            permutedCard = new int[(int) permutations][];
+            originalCard = new int[(int) permutations][];
+            buildPermutations(config);
+        } else {
+            permutedCard = originalCard = null;
+        }
+    }
+
+    /**
+     * Fills the card permutation tables, one pair per permutation of the feature positions.
+     */
+    private void buildPermutations(Config config) {
+        // cardOf maps the features of a card, written as a number in base featureSize, back to the card id
+        int[][] features = new int[deckSize][];
+        int[] cardOf = new int[deckSize];
+        for (int card = 0; card < deckSize; ++card) {
+            features[card] = util.cardToFeatures(card);
+            cardOf[encode(features[card], null, config.featureSize)] = card;
+        }
+
+        int[] order = new int[config.featureCount];
+        Arrays.setAll(order, i -> i);
+        for (int p = 0; p < permutedCard.length; ++p) {
+            permutedCard[p] = new int[deckSize];
+            originalCard[p] = new int[deckSize];
+            for (int card = 0; card < deckSize; ++card) {
+                int image = cardOf[encode(features[card], order, config.featureSize)];
+                permutedCard[p][card] = image;
+                originalCard[p][image] = card;
+            }
+            nextPermutation(order);
+        }
+    }
+
+    private static int encode(int[] features, int[] order, int featureSize) {
+        int code = 0;
+        for (int i = features.length - 1; i >= 0; --i)
+            code = code * featureSize + features[order == null ? i : order[i]];
+        return code;
+    }
+
+    /**
+     * Rearranges the array into the lexicographically next permutation (wrapping around after the last one).
+     */
+    private static void nextPermutation(int[] order) {
+        int i = order.length - 2;
+        while (i >= 0 && order[i] >= order[i + 1]) --i;
+        if (i >= 0) {
+            int j = order.length - 1;
+            while (order[j] <= order[i]) --j;
+            swap(order, i, j);
+        }
+        for (int l = i + 1, r = order.length - 1; l < r; ++l, --r)
+            swap(order, l, r);
+    }
+
+    private static void swap(int[] array, int i, int j) {
+        int temp = array[i];
+        array[i] = array[j];
+        array[j] = temp;
+    }
+
+    private long[] presence(int[] cards, int length, int[] mapping) {
+        long[] present = new long[(deckSize + 63) >>> 6];
+        for (int i = 0; i < length; ++i) {
+            int image = mapping == null ? cards[i] : mapping[cards[i]];
+            present[image >>> 6] |= 1L << image;
+        }
+        return present;
+    }
+
+    /**
+     * @return - true iff the first bitmap is smaller than the second one as a (deckSize bit) unsigned number.
+     */
+    private static boolean smaller(long[] first, long[] second) {
+        for (int i = first.length - 1; i >= 0; --i)
+            if (first[i] != second[i])
+                return Long.compareUnsigned(first[i], second[i]) < 0;
+        return false;
+    }
+
+    @Override
+    public List<int[]> findSets(List<Integer> deck, int count) {
+        int limit = Math.max(1, count);
+        int[] cards = deck.stream().mapToInt(Integer::intValue).toArray();
+        List<int[]> sets = new ArrayList<>();
+        forEachSet(cards, cards.length, set -> {
+            sets.add(set.clone());
+            return sets.size() < limit;
+        });
+        return sets;
+    }
+
+    /**
+     * Enumerates the sets of a collection from the cache, searching only when the cached entry of the collection is
+     * missing, or was cut short before the visitor had enough sets. The search is over the canonical form of the
+     * collection in ascending card order, so the sets always come in the same order, and an entry cut short is a
+     * prefix of the full enumeration (a longer search skips the sets the visitor has already received from it).
+     */
+    @Override
+    public void forEachSet(int[] cards, int length, SetVisitor visitor) {
+        // find the canonical form of the collection (the identity when not canonicalizing)
+        int permutation = -1;
+        long[] present = presence(cards, length, null);
+        if (permutedCard != null)
+            for (int p = 0; p < permutedCard.length; ++p) {
+                long[] candidate = presence(cards, length, permutedCard[p]);
+                if (permutation == -1 || smaller(candidate, present)) {
+                    present = candidate;
+                    permutation = p;
+                }
+            }
+        int[] original = permutation == -1 ? null : originalCard[permutation];
+
+        Key key = new Key(present);
+        CachedSets cached;
+        synchronized (cache) {
+            cached = cache.get(key);
+        }
+        int[] set = new int[featureSize];
+        int replayed = 0;
+        if (cached != null) {
+            for (int[] found : cached.sets)
+                if (!visit(found, original, set, visitor)) {
+                    hits.incrementAndGet();
+                    return;
+                }
+            if (cached.complete) {
+                hits.incrementAndGet();
+                return;
+            }
+            replayed = cached.sets.length;
+        }
+        misses.incrementAndGet();
+
+        int[] searched = new int[length];
+        int size = 0;
+        for (int word = 0; word < present.length; ++word)
+            for (long bits = present[word]; bits != 0; bits &= bits - 1)
+                searched[size++] = (word << 6) + Long.numberOfTrailingZeros(bits);
+        List<int[]> found = new ArrayList<>();
+        boolean[] stopped = {false};
+        int skip = replayed;
+        util.forEachSet(searched, size, canonical -> {
+            int[] copy = canonical.clone();
+            found.add(copy);
+            if (found.size() <= skip || visit(copy, original, set, visitor)) return true;
+            stopped[0] = true;
+            return false;
+        });
+        synchronized (cache) {
+            cache.put(key, new CachedSets(found.toArray(new int[0][]), !stopped[0]));
+        }
+    }
+
+    /**
+     * Passes a set of the canonical form of a collection to the visitor, mapped back to the cards of the collection.
+     */
+    private static boolean visit(int[] canonical, int[] original, int[] set, SetVisitor visitor) {
+        for (int i = 0; i < set.length; ++i)
+            set[i] = original == null ? canonical[i] : original[canonical[i]];
+        if (original != null) Arrays.sort(set);
+        return visitor.visit(set);
+    }
+
+    /**
+     * @return - the number of searches (findSets, forEachSet and countSets calls) answered from the cache.
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * @return - the number of searches that had to search.
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    /**
+     * @return - the number of card collections currently in the cache.
+     */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    @Override
+    public int[] cardToFeatures(int card) {
+        return util.cardToFeatures(card);
+    }
+
+    @Override
+    public int[][] cardsToFeatures(int[] cards) {
+        return util.cardsToFeatures(cards);
+    }
+
+    @Override
+    public boolean testSet(int[] cards) {
+        return util.testSet(cards);
+    }
+
+    @Override
+    public boolean testSet(int first, int second, int third) {
+        return util.testSet(first, second, third);
+    }
+
+    @Override
+    public void testSets(int[] triples, int count, long[] result) {
+        util.testSets(triples, count, result);
+    }
+
+    @Override
+    public int completeSet(int[] cards) {
+        return util.completeSet(cards);
+    }
+
+    @Override
+    public Stream<int[]> streamSets(int[] cards, int length) {
+        return util.streamSets(cards, length);
+    }
+
+    @Override
+    public int countSets(int[] cards, int length) {
+        int[] count = {0};
+        forEachSet(cards, length, set -> ++count[0] > 0);
+        return count[0];
+    }
+
+    @Override
+    public int[] countSetsPerCard(int[] cards, int length) {
+        return util.countSetsPerCard(cards, length);
+    }
+
+    @Override
+    public void spin() {
+        util.spin();
+    }
+
+    /**
+     * A card presence bitmap used as a map key.
+     */
+    private static final class Key {
+
+        private final long[] words;
+        private final int hash;
+
+        Key(long[] words) {
+            this.words = words;
+            this.hash = Arrays.hashCode(words);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && Arrays.equals(words, ((Key) other).words);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The sets found in the canonical form of a collection of cards, in the order forEachSet finds them. The search may
+     * have stopped before finding all of them.
+     */
+    private static final class CachedSets {
+
+        private final int[][] sets;
+        private final boolean complete;
+
+        CachedSets(int[][] sets, boolean complete) {
+            this.sets = sets;
+            this.complete = complete;
+        }
+    }
+}
@@ -1,10 +1,20 @@
 package bguspl.set;
 
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.stream.IntStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The implementation of the UserInterface interface.
@@ -13,15 +23,102 @@ public class UtilImpl implements Util {
 
     private final Config config;
 
+    /**
+     * The features of every card in the deck, packed into a single word per card (feature i is stored in the bits
+     * starting at i * featureBits).
+     */
+    private final long[] packedFeatures;
+
+    /**
+     * The number of bits used to store a single feature in a packed word, and the mask to extract it.
+     */
+    private final int featureBits;
+    private final long featureMask;
+
+    /**
+     * The value of each feature position in a card id (i.e. featureSize ^ (featureCount - 1 - i)).
+     */
+    private final int[] featureWeights;
+
+    /**
+     * For decks with a feature size of 3, the one-hot bit planes of every card: bit i of plane v (the bits starting at
+     * v * PLANE_BITS) is set iff feature i of the card has the value v. Null for other feature sizes.
+     */
+    private final long[] featurePlanes;
+
+    /**
+     * The width of a single bit plane (a feature size of 3 allows at most 19 features in an int card id), and the mask
+     * of a plane with a bit per feature.
+     */
+    private static final int PLANE_BITS = 21;
+    private final long planeMask;
+
+    /**
+     * Per thread scratch tables for counting (see Scratch), so that countSets and countSetsPerCard do not allocate.
+     */
+    private final ThreadLocal<Scratch> scratch;
+
     public UtilImpl(Config config) {
         this.config = config;
+        featureBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(config.featureSize - 1));
+        featureMask = (1L << featureBits) - 1;
+        featureWeights = new int[config.featureCount];
+        for (int i = config.featureCount - 1, weight = 1; i >= 0; --i, weight *= config.featureSize)
+            featureWeights[i] = weight;
+
+        planeMask = (1L << config.featureCount) - 1;
+        int tables = config.featureSize == 3 ? 2 : 1;
+        Path file = config.tableCacheDirectory.isEmpty() ? null : SetTableFile.path(config.tableCacheDirectory, config);
+        long[][] loaded = file == null ? null : SetTableFile.load(file, config, featureBits, tables);
+        if (loaded != null) {
+            packedFeatures = loaded[0];
+            featurePlanes = tables == 2 ? loaded[1] : null;
+        } else {
+            packedFeatures = packFeatures();
+            featurePlanes = tables == 2 ? featurePlanes() : null;
+            if (file != null) {
+                if (featurePlanes != null) SetTableFile.store(file, config, featureBits, packedFeatures, featurePlanes);
+                else SetTableFile.store(file, config, featureBits, packedFeatures);
+            }
+        }
+
+        scratch = ThreadLocal.withInitial(Scratch::new);
+    }
+
+    /**
+     * @return - the packed features table of the deck.
+     */
+    private long[] packFeatures() {
+        long[] packed = new long[config.deckSize];
+        for (int card = 0; card < config.deckSize; ++card)
+            for (int i = config.featureCount - 1, rest = card; i >= 0; --i) {
+                packed[card] |= (long) (rest % config.featureSize) << (i * featureBits);
+                rest /= config.featureSize;
+            }
+        return packed;
+    }
+
+    /**
+     * @return - the one-hot bit planes table of the deck (requires the packed features table).
+     */
+    private long[] featurePlanes() {
+        long[] planes = new long[config.deckSize];
+        for (int card = 0; card < config.deckSize; ++card)
+            for (int i = 0; i < config.featureCount; ++i)
+                planes[card] |= 1L << (feature(card, i) * PLANE_BITS + i);
+        return planes;
+    }
+
+    /**
+     * Reads a single feature of a card from the packed features table.
+     */
+    private int feature(int card, int i) {
+        return (int) (packedFeatures[card] >>> (i * featureBits) & featureMask);
     }
 
     private void cardToFeatures(int card, int[] features) {
-        for (int i = config.featureCount - 1; i >= 0; --i) {
-            features[i] = card % config.featureSize;
-            card /= config.featureSize;
-        }
+        for (int i = 0; i < config.featureCount; ++i)
+            features[i] = feature(card, i);
     }
 
     @Override
@@ -34,60 +131,507 @@ public class UtilImpl implements Util {
     @Override
     public int[][] cardsToFeatures(int[] cards) {
         int[][] features = new int[cards.length][config.featureCount];
-        IntStream.range(0, cards.length).forEach(i -> cardToFeatures(cards[i], features[i]));
+        for (int i = 0; i < cards.length; ++i)
+            cardToFeatures(cards[i], features[i]);
         return features;
     }
 
     @Override
     public boolean testSet(int[] cards) {
-        int[][] features = cardsToFeatures(Arrays.copyOf(cards, cards.length));
         for (int i = 0; i < config.featureCount; ++i) {
+            int first = feature(cards[0], i);
             boolean sameSame = true, butDifferent = true;
 
             // check if this features is sameSame in all cards
-            for (int j = 1; j < features.length; ++j)
-                if (features[0][i] != features[j][i]) {
+            for (int j = 1; j < cards.length; ++j)
+                if (feature(cards[j], i) != first) {
                     sameSame = false;
                     break;
                 }
 
             // check if this feature is butDifferent in all cards
-            for (int j = 1; j < features.length; ++j)
-                for (int k = j; k < features.length; ++k)
-                    if (features[j - 1][i] == features[k][i]) {
+            for (int j = 0; butDifferent && j < cards.length - 1; ++j) {
+                int value = feature(cards[j], i);
+                for (int k = j + 1; k < cards.length; ++k)
+                    if (feature(cards[k], i) == value) {
                         butDifferent = false;
                         break;
                     }
+            }
 
             if (sameSame == butDifferent) return false;
         }
         return true;
     }
 
+    @Override
+    public boolean testSet(int first, int second, int third) {
+        if (featurePlanes != null) return testPlanes(first, second, third);
+        long a = packedFeatures[first], b = packedFeatures[second], c = packedFeatures[third];
+        for (int i = 0; i < config.featureCount; ++i, a >>>= featureBits, b >>>= featureBits, c >>>= featureBits) {
+            boolean ab = (a & featureMask) == (b & featureMask);
+            boolean bc = (b & featureMask) == (c & featureMask);
+            boolean ac = (a & featureMask) == (c & featureMask);
+
+            // either all three are equal or no two of them are
+            if (ab != bc || ab != ac) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Tests three cards of a feature size 3 deck in a few word-wide operations on their bit planes. ORing the one-hot
+     * planes of the cards leaves, for every feature, one bit set if all values are the same, three bits if they are
+     * all different, and exactly two bits if the feature breaks the set.
+     */
+    private boolean testPlanes(int first, int second, int third) {
+        long values = featurePlanes[first] | featurePlanes[second] | featurePlanes[third];
+        long zero = values & planeMask, one = values >>> PLANE_BITS & planeMask, two = values >>> 2 * PLANE_BITS;
+        return (zero & one & ~two | zero & ~one & two | ~zero & one & two) == 0;
+    }
+
+    @Override
+    public void testSets(int[] triples, int count, long[] result) {
+        Arrays.fill(result, 0, (count + 63) >>> 6, 0L);
+        if (featurePlanes != null) {
+            for (int i = 0, j = 0; i < count; ++i, j += 3)
+                if (testPlanes(triples[j], triples[j + 1], triples[j + 2]))
+                    result[i >>> 6] |= 1L << i;
+        } else {
+            for (int i = 0, j = 0; i < count; ++i, j += 3)
+                if (testSet(triples[j], triples[j + 1], triples[j + 2]))
+                    result[i >>> 6] |= 1L << i;
+        }
+    }
+
+    @Override
+    public int completeSet(int[] cards) {
+        if (cards.length == 2 && config.featureSize == 3) return thirdCard(cards[0], cards[1]);
+
+        int missing = 0;
+        int valuesSum = config.featureSize * (config.featureSize - 1) / 2;
+        for (int i = 0; i < config.featureCount; ++i) {
+            int first = feature(cards[0], i), sum = first;
+            boolean sameSame = true, butDifferent = true;
+            for (int j = 1; j < cards.length; ++j) {
+                int value = feature(cards[j], i);
+                sum += value;
+                if (value != first) sameSame = false;
+                for (int k = 0; butDifferent && k < j; ++k)
+                    if (feature(cards[k], i) == value) butDifferent = false;
+            }
+
+            // the missing card repeats an all same feature, or takes the only value left of an all different one
+            if (sameSame) missing += first * featureWeights[i];
+            else if (butDifferent) missing += (valuesSum - sum) * featureWeights[i];
+            else return -1;
+        }
+        return missing;
+    }
+
     @Override
     public List<int[]> findSets(List<Integer> deck, int count) {
-        LinkedList<int[]> sets = new LinkedList<>();
-        int n = deck.size();
-        int r = config.featureSize;
-        int[] combination = new int[r];
+        return findSets(deck, count, ForkJoinPool.getCommonPoolParallelism() > 1
+                && searchWork(deck.size()) >= PARALLEL_MIN_WORK);
+    }
+
+    /**
+     * Finds and returns up to count sets in the given collection of cards, either on the calling thread or split
+     * across the common fork/join pool.
+     *
+     * @param deck     - a collection of cards (may not include null objects).
+     * @param count    - the maximum number of sets to find.
+     * @param parallel - true to search in parallel, false to search on the calling thread.
+     * @return - a list of up to count integer arrays, each one contains the card ids of a legal set.
+     */
+    public List<int[]> findSets(List<Integer> deck, int count, boolean parallel) {
+        int[] cards = new int[deck.size()];
+        for (int i = 0; i < cards.length; ++i)
+            cards[i] = deck.get(i);
+        long[] present = presence(cards, cards.length);
+        int limit = Math.max(1, count);
 
+        if (!parallel) {
+            LinkedList<int[]> sets = new LinkedList<>();
+            search(cards, cards.length, present, 0, cards.length, set -> {
+                sets.add(set.clone());
+                return sets.size() < limit;
+            });
+            return sets;
+        }
+
+        ConcurrentLinkedQueue<int[]> sets = new ConcurrentLinkedQueue<>();
+        AtomicInteger found = new AtomicInteger();
+        int grain = Math.max(1, cards.length / (ForkJoinPool.getCommonPoolParallelism() * 8));
+        ForkJoinPool.commonPool().invoke(new SearchTask(cards, present, 0, cards.length, grain, () -> found.get() >= limit, set -> {
+            int index = found.incrementAndGet();
+            if (index <= limit) sets.add(set.clone());
+            return index < limit;
+        }));
+        return new LinkedList<>(sets);
+    }
+
+    @Override
+    public void forEachSet(int[] cards, int length, SetVisitor visitor) {
+        search(cards, length, presence(cards, length), 0, length, visitor);
+    }
+
+    @Override
+    public Stream<int[]> streamSets(int[] cards, int length) {
+        return StreamSupport.stream(new SetSpliterator(cards, length, presence(cards, length), 0, length), false);
+    }
+
+    @Override
+    public int countSets(int[] cards, int length) {
+        return count(cards, length, null);
+    }
+
+    @Override
+    public int[] countSetsPerCard(int[] cards, int length) {
+        int[] counts = new int[length];
+        count(cards, length, counts);
+        return counts;
+    }
+
+    /**
+     * Counts the sets in cards[0..length) the same way search finds them, on the scratch tables of the calling thread.
+     *
+     * @param counts - if not null, counts[i] is incremented for every set that cards[i] belongs to.
+     * @return - the number of sets.
+     */
+    private int count(int[] cards, int length, int[] counts) {
+        Scratch scratch = this.scratch.get();
+        long[] present = scratch.present;
+        int[] positions = scratch.positions;
+        for (int i = 0; i < length; ++i) {
+            present[cards[i] >>> 6] |= 1L << cards[i];
+            positions[cards[i]] = i;
+        }
+
+        int sets;
+        if (config.featureSize == 3) sets = countTriples(cards, length, present, positions, counts);
+        else {
+            scratch.counts = counts;
+            scratch.sets = 0;
+            if (prunable())
+                extend(cards, length, present, scratch.values, scratch.chosen, scratch.set, 0, 0, length, scratch);
+            else
+                searchCombinations(cards, length, scratch.combination, scratch.set, 0, 0, length, scratch);
+            sets = scratch.sets;
+            scratch.counts = null;
+        }
+
+        for (int i = 0; i < length; ++i)
+            present[cards[i] >>> 6] = 0;
+        return sets;
+    }
+
+    /**
+     * Counts the sets of 3 cards in cards[0..length) the same way searchTriples finds them.
+     */
+    private int countTriples(int[] cards, int length, long[] present, int[] positions, int[] counts) {
+        int sets = 0;
+        for (int i = 0; i < length - 1; ++i)
+            for (int j = i + 1; j < length; ++j) {
+                int first = Math.min(cards[i], cards[j]), second = Math.max(cards[i], cards[j]);
+                int third = thirdCard(first, second);
+                if (third > second && (present[third >>> 6] & (1L << third)) != 0) {
+                    ++sets;
+                    if (counts != null) {
+                        counts[i]++;
+                        counts[j]++;
+                        counts[positions[third]]++;
+                    }
+                }
+            }
+        return sets;
+    }
+
+    /**
+     * The minimal number of candidates (pairs to complete or combinations to test) for which findSets searches in
+     * parallel, if the common pool has more than one worker. The serial search takes 15 to 85 ns per candidate, so
+     * this is 4 to 22 ms of work, while the parallel search costs 15 to 35 us more to start and up to twice the serial
+     * time in all when its tasks share a single core. Below it, splitting the search costs more than it saves.
+     */
+    private static final double PARALLEL_MIN_WORK = 1 << 18;
+
+    /**
+     * Estimates the number of candidates a search over n cards examines.
+     */
+    private double searchWork(int n) {
+        int r = prunable() ? config.featureSize - 1 : config.featureSize;
+        double work = 1;
         for (int i = 0; i < r; ++i)
-            combination[i] = i;
+            work = work * (n - i) / (i + 1);
+        return work;
+    }
+
+    /**
+     * Builds a bitmap of the first length cards of the array (bit i is set iff card i is among them).
+     */
+    private long[] presence(int[] cards, int length) {
+        long[] present = new long[(config.deckSize + 63) >>> 6];
+        for (int i = 0; i < length; ++i)
+            present[cards[i] >>> 6] |= 1L << cards[i];
+        return present;
+    }
 
-        while (combination[r - 1] < deck.size()) {
-            int[] cards = Arrays.stream(combination).map(deck::get).sorted().toArray();
-            if (testSet(cards)) {
-                sets.add(cards);
-                if (sets.size() >= count) return sets;
+    /**
+     * Searches cards[0..length) for the sets whose first card (in the order of the array) is at an index in
+     * [from, to). The visitor receives each set in the same reused array.
+     *
+     * @return - false iff the visitor stopped the search.
+     */
+    private boolean search(int[] cards, int length, long[] present, int from, int to, SetVisitor visitor) {
+        if (config.featureSize == 3) return searchTriples(cards, length, present, from, to, visitor);
+        if (prunable()) return searchPruned(cards, length, present, from, to, visitor);
+        return searchCombinations(cards, length, new int[config.featureSize], new int[config.featureSize], 0, from, to, visitor);
+    }
+
+    /**
+     * Finds sets of 3 cards by completing every pair of cards: in a 3 valued feature, any two cards determine the
+     * single card that completes them to a set, so it is enough to look that card up in a bitmap of the given cards.
+     * Each set {a < b < c} is reported exactly once, from the pair (a, b).
+     */
+    private boolean searchTriples(int[] cards, int length, long[] present, int from, int to, SetVisitor visitor) {
+        int[] set = new int[3];
+        for (int i = from; i < to; ++i)
+            for (int j = i + 1; j < length; ++j) {
+                int first = Math.min(cards[i], cards[j]), second = Math.max(cards[i], cards[j]);
+                int third = thirdCard(first, second);
+                if (third > second && (present[third >>> 6] & (1L << third)) != 0) {
+                    set[0] = first;
+                    set[1] = second;
+                    set[2] = third;
+                    if (!visitor.visit(set)) return false;
+                }
             }
+        return true;
+    }
+
+    /**
+     * Computes the card that completes the two given cards to a set (for decks with a feature size of 3).
+     * In each feature the third value is the one that makes the three values sum to 0 modulo 3.
+     */
+    private int thirdCard(int first, int second) {
+        long a = packedFeatures[first], b = packedFeatures[second];
+        int third = 0;
+        for (int i = 0; i < config.featureCount; ++i, a >>>= featureBits, b >>>= featureBits)
+            third += (int) ((6 - (a & featureMask) - (b & featureMask)) % 3) * featureWeights[i];
+        return third;
+    }
 
-            // generate next combination in lexicographic order
-            int t = r - 1;
-            while (t != 0 && combination[t] == n - r + t) --t;
-            combination[t]++;
-            for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+    /**
+     * @return - true iff sets are searched by pruned backtracking (feature values must fit in a long bitmask, and sets
+     * of 2 cards, where every pair is a set, cannot be told apart by their features).
+     */
+    private boolean prunable() {
+        return config.featureSize >= 3 && config.featureSize <= Long.SIZE;
+    }
+
+    /**
+     * Finds sets of config.featureSize cards by backtracking: cards are added to a partial combination one at a time,
+     * and a combination is dropped as soon as one of its features is neither all same nor all different. The last
+     * card is not searched for, it is computed from the others and looked up in the bitmap of the given cards.
+     * Each set is reported exactly once, when its completing card is the one with the highest id.
+     */
+    private boolean searchPruned(int[] cards, int length, long[] present, int from, int to, SetVisitor visitor) {
+        long[][] values = new long[config.featureSize - 1][config.featureCount];
+        int[] chosen = new int[config.featureSize - 1];
+        int[] set = new int[config.featureSize];
+        return extend(cards, length, present, values, chosen, set, 0, from, to, visitor);
+    }
+
+    /**
+     * Chooses the card at position depth of the partial combination from the indices [from, to).
+     * values[depth][i] is the bitmask of the values of feature i among chosen[0..depth].
+     */
+    private boolean extend(int[] cards, int length, long[] present, long[][] values, int[] chosen, int[] set, int depth,
+                           int from, int to, SetVisitor visitor) {
+        for (int i = from; i < to; ++i) {
+            int card = cards[i];
+            if (!admit(values, depth, card)) continue;
+            chosen[depth] = card;
+            if (depth < chosen.length - 1) {
+                if (!extend(cards, length, present, values, chosen, set, depth + 1, i + 1, length, visitor))
+                    return false;
+                continue;
+            }
+
+            int missing = 0, highest = -1;
+            for (int f = 0; f < config.featureCount; ++f) {
+                long mask = values[depth][f];
+                // an all same feature repeats its value, an all different one takes the only value left
+                int value = Long.bitCount(mask) == 1 ? Long.numberOfTrailingZeros(mask) : Long.numberOfTrailingZeros(~mask);
+                missing += value * featureWeights[f];
+            }
+            for (int c : chosen)
+                highest = Math.max(highest, c);
+            if (missing > highest && (present[missing >>> 6] & (1L << missing)) != 0) {
+                System.arraycopy(chosen, 0, set, 0, chosen.length);
+                set[chosen.length] = missing;
+                Arrays.sort(set);
+                if (!visitor.visit(set)) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds a card to the feature bitmasks of the partial combination at position depth.
+     *
+     * @return - false iff some feature of the extended combination is neither all same nor all different.
+     */
+    private boolean admit(long[][] values, int depth, int card) {
+        long packed = packedFeatures[card];
+        for (int f = 0; f < config.featureCount; ++f, packed >>>= featureBits) {
+            long mask = (depth == 0 ? 0 : values[depth - 1][f]) | 1L << (packed & featureMask);
+            int distinct = Long.bitCount(mask);
+            if (distinct != 1 && distinct != depth + 1) return false;
+            values[depth][f] = mask;
+        }
+        return true;
+    }
+
+    /**
+     * Finds sets by testing every combination of config.featureSize cards (used when the search cannot be pruned).
+     * The card at position depth of the combination is chosen from the indices [from, to).
+     */
+    private boolean searchCombinations(int[] cards, int length, int[] combination, int[] set, int depth, int from, int to,
+                                       SetVisitor visitor) {
+        for (int i = from; i < to; ++i) {
+            combination[depth] = cards[i];
+            if (depth < combination.length - 1) {
+                if (!searchCombinations(cards, length, combination, set, depth + 1, i + 1, length, visitor))
+                    return false;
+            } else if (testSet(combination)) {
+                System.arraycopy(combination, 0, set, 0, set.length);
+                Arrays.sort(set);
+                if (!visitor.visit(set)) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The scratch tables of a thread for counting sets: a bitmap of the cards being searched, the position of each of
+     * them in the searched array, and the partial combinations of the search. Only the entries of the searched cards
+     * are written, and the bitmap is cleared afterwards. It is also the visitor that counts the sets it is given.
+     */
+    private class Scratch implements SetVisitor {
+
+        private final long[] present = new long[(config.deckSize + 63) >>> 6];
+        private final int[] positions = new int[config.deckSize];
+        private final long[][] values = prunable() ? new long[config.featureSize - 1][config.featureCount] : null;
+        private final int[] chosen = prunable() ? new int[config.featureSize - 1] : null;
+        private final int[] combination = new int[config.featureSize];
+        private final int[] set = new int[config.featureSize];
+
+        private int[] counts;
+        private int sets;
+
+        @Override
+        public boolean visit(int[] set) {
+            ++sets;
+            if (counts != null)
+                for (int card : set)
+                    counts[positions[card]]++;
+            return true;
+        }
+    }
+
+    /**
+     * A fork/join task searching the sets whose first card is at an index in [from, to). Ranges are split in halves
+     * down to grain indices, and every task stops as soon as the visitor has received enough sets.
+     */
+    private class SearchTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] cards;
+        private final long[] present;
+        private final int from, to, grain;
+        private final BooleanSupplier done;
+        private final SetVisitor visitor;
+
+        private SearchTask(int[] cards, long[] present, int from, int to, int grain, BooleanSupplier done, SetVisitor visitor) {
+            this.cards = cards;
+            this.present = present;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.done = done;
+            this.visitor = visitor;
+        }
+
+        @Override
+        protected void compute() {
+            if (done.getAsBoolean()) return;
+            if (to - from > grain) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new SearchTask(cards, present, from, middle, grain, done, visitor),
+                        new SearchTask(cards, present, middle, to, grain, done, visitor));
+                return;
+            }
+            for (int i = from; i < to && !done.getAsBoolean(); ++i)
+                if (!search(cards, cards.length, present, i, i + 1, visitor)) return;
+        }
+    }
+
+    /**
+     * A lazy spliterator over the sets whose first card is at an index in [from, to). The sets starting at a single
+     * index are searched only when the previous ones were consumed, and splitting halves the remaining indices.
+     */
+    private class SetSpliterator implements Spliterator<int[]> {
+
+        private final int[] cards;
+        private final int length;
+        private final long[] present;
+        private int from;
+        private final int to;
+
+        /**
+         * The sets found at the last searched index that were not consumed yet.
+         */
+        private final ArrayDeque<int[]> pending = new ArrayDeque<>();
+
+        private SetSpliterator(int[] cards, int length, long[] present, int from, int to) {
+            this.cards = cards;
+            this.length = length;
+            this.present = present;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super int[]> action) {
+            while (pending.isEmpty() && from < to) {
+                int index = from++;
+                search(cards, length, present, index, index + 1, set -> pending.add(set.clone()));
+            }
+            if (pending.isEmpty()) return false;
+            action.accept(pending.poll());
+            return true;
+        }
+
+        @Override
+        public Spliterator<int[]> trySplit() {
+            int middle = (from + to) >>> 1;
+            if (!pending.isEmpty() || middle <= from) return null;
+            Spliterator<int[]> prefix = new SetSpliterator(cards, length, present, from, middle);
+            from = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return DISTINCT | NONNULL | IMMUTABLE;
         }
-        return sets;
     }
 
     public void spin() {
@@ -0,0 +1,254 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The implementation of the Clock interface over virtual time, which starts at 0 and stands still while any
+ * participant (see register) is busy. Once all the participants wait for the clock, a driver thread jumps straight to
+ * the earliest deadline waited for and wakes up the threads waiting for it. A game whose threads spend most of their
+ * time waiting thus runs as fast as the computation allows, with the same timeouts, freezes and delays as in real time.
+ * Threads that are not participants may wait for the clock as well, but time does not wait for them.
+ */
+public class VirtualClock implements Clock, AutoCloseable {
+
+    /**
+     * Guards all the fields below. The driver thread waits on changed for the participants and the waits to change.
+     */
+    private final Lock state = new ReentrantLock();
+    private final Condition changed = state.newCondition();
+
+    /**
+     * The current virtual time in milliseconds.
+     */
+    private volatile long now;
+
+    /**
+     * The threads registered as participants.
+     */
+    private final Set<Thread> participants = new HashSet<>();
+
+    /**
+     * The waits in progress that were not signalled yet, and the number of them made by participants.
+     */
+    private final List<Waiter> waiters = new ArrayList<>();
+    private int blocked;
+
+    private boolean closed;
+
+    /**
+     * The number of times the time moved forward.
+     */
+    private long steps;
+
+    public VirtualClock() {
+        Thread driver = new Thread(this::drive, "virtual-clock");
+        driver.setDaemon(true);
+        driver.start();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return now;
+    }
+
+    /**
+     * @return - the number of times the time moved forward so far.
+     */
+    long steps() {
+        state.lock();
+        try {
+            return steps;
+        } finally {
+            state.unlock();
+        }
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        long deadline = now + millis;
+        Lock lock = new ReentrantLock();
+        Condition woken = lock.newCondition();
+        lock.lock();
+        try {
+            for (long left = millis; left > 0; left = deadline - now)
+                await(lock, woken, left);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void await(Lock lock, Condition condition, long millis) throws InterruptedException {
+        if (millis > 0) awaitUntil(lock, condition, now + millis);
+    }
+
+    @Override
+    public void await(Lock lock, Condition condition) throws InterruptedException {
+        awaitUntil(lock, condition, Long.MAX_VALUE);
+    }
+
+    /**
+     * Waits on a condition until it is signalled or until the time reaches the deadline (or forever, if the deadline
+     * is Long.MAX_VALUE).
+     */
+    private void awaitUntil(Lock lock, Condition condition, long deadline) throws InterruptedException {
+        Waiter waiter;
+        state.lock();
+        try {
+            waiter = new Waiter(lock, condition, deadline, participants.contains(Thread.currentThread()));
+            waiters.add(waiter);
+            if (waiter.participant) ++blocked;
+            changed.signalAll();
+        } finally {
+            state.unlock();
+        }
+        // the waiter cannot be signalled before this thread waits: signalling requires the lock of the condition
+        try {
+            condition.await();
+        } finally {
+            state.lock();
+            try {
+                if (waiters.remove(waiter) && waiter.participant) --blocked;
+            } finally {
+                state.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void signalAll(Condition condition) {
+        state.lock();
+        try {
+            for (Iterator<Waiter> it = waiters.iterator(); it.hasNext(); ) {
+                Waiter waiter = it.next();
+                if (waiter.condition == condition) {
+                    it.remove();
+                    if (waiter.participant) --blocked;
+                }
+            }
+        } finally {
+            state.unlock();
+        }
+        condition.signalAll();
+    }
+
+    @Override
+    public void register() {
+        state.lock();
+        try {
+            participants.add(Thread.currentThread());
+            changed.signalAll();
+        } finally {
+            state.unlock();
+        }
+    }
+
+    @Override
+    public void unregister() {
+        state.lock();
+        try {
+            participants.remove(Thread.currentThread());
+            changed.signalAll();
+        } finally {
+            state.unlock();
+        }
+    }
+
+    /**
+     * Stops the driver thread. Time does not move anymore afterwards.
+     */
+    @Override
+    public void close() {
+        state.lock();
+        try {
+            closed = true;
+            changed.signalAll();
+        } finally {
+            state.unlock();
+        }
+    }
+
+    /**
+     * The main loop of the driver thread: whenever all the participants wait for the clock, advances the time to the
+     * earliest deadline and wakes up the threads whose deadline has come.
+     */
+    private void drive() {
+        List<Waiter> expired = new ArrayList<>();
+        try {
+            while (true) {
+                state.lock();
+                try {
+                    long next = Long.MAX_VALUE;
+                    while (!closed && ((next = nextDeadline()) == Long.MAX_VALUE || blocked < participants.size()))
+                        changed.await();
+                    if (closed) return;
+
+                    if (next > now) {
+                        now = next;
+                        ++steps;
+                    }
+                    for (Iterator<Waiter> it = waiters.iterator(); it.hasNext(); ) {
+                        Waiter waiter = it.next();
+                        if (waiter.deadline <= now) {
+                            it.remove();
+                            if (waiter.participant) --blocked;
+                            expired.add(waiter);
+                        }
+                    }
+                } finally {
+                    state.unlock();
+                }
+                // the state lock is released first, as the waiters hold their locks while taking it
+                for (Waiter waiter : expired) {
+                    waiter.lock.lock();
+                    try {
+                        waiter.condition.signalAll();
+                    } finally {
+                        waiter.lock.unlock();
+                    }
+                }
+                expired.clear();
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    /**
+     * @return - the earliest deadline waited for by a participant or, if there is none, by any thread. Long.MAX_VALUE
+     * if there is none at all (only waits with no timeout). Waits of threads that are not participants thus never
+     * make the time move in smaller steps than the participants need.
+     */
+    private long nextDeadline() {
+        long participant = Long.MAX_VALUE, any = Long.MAX_VALUE;
+        for (Waiter waiter : waiters) {
+            any = Math.min(any, waiter.deadline);
+            if (waiter.participant) participant = Math.min(participant, waiter.deadline);
+        }
+        return participant != Long.MAX_VALUE ? participant : any;
+    }
+
+    /**
+     * A single wait for the clock.
+     */
+    private static final class Waiter {
+
+        private final Lock lock;
+        private final Condition condition;
+        private final long deadline;
+        private final boolean participant;
+
+        Waiter(Lock lock, Condition condition, long deadline, boolean participant) {
+            this.lock = lock;
+            this.condition = condition;
+            this.deadline = deadline;
+            this.participant = participant;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class generates the key presses of all the computer players of a game on a small shared pool of threads,
+ * instead of a thread per computer player. Each computer player presses a key at most once every
+ * 1 / ComputerActionsPerSecond seconds (or as fast as it handles them, if the rate is 0), so the cost of the computer
+ * players follows the requested rate rather than the number of players. A computer player whose key buffer is full is
+ * parked until the player handles a key (see wake), instead of pressing keys that would be dropped.
+ */
+class ComputerPlayerScheduler {
+
+    /**
+     * The outcome of a single key press attempt of a computer player (see Player.pressRandomKey).
+     */
+    enum KeyPress {PRESSED, TABLE_BUSY, BUFFER_FULL}
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The time between two key presses of a computer player in milliseconds (0 for no pacing).
+     */
+    private final long interval;
+
+    /**
+     * The scheduling state of each player, indexed by the player id (null for players that are not scheduled).
+     */
+    private final Entry[] entries;
+
+    /**
+     * Guards all the scheduling state. The idle worker threads wait on queueChanged.
+     */
+    private final Lock queueLock = new ReentrantLock();
+    private final Condition queueChanged = queueLock.newCondition();
+
+    /**
+     * The scheduled players by the time of their next key press (and by the order they were scheduled in, for ties).
+     */
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>((a, b) ->
+            a.due != b.due ? Long.compare(a.due, b.due) : Long.compare(a.order, b.order));
+    private long order;
+
+    private final Thread[] workers;
+
+    private boolean closed;
+
+    /**
+     * The class constructor.
+     *
+     * @param env     - the environment object.
+     * @param threads - the number of worker threads.
+     */
+    ComputerPlayerScheduler(Env env, int threads) {
+        this.env = env;
+        double rate = env.config.computerActionsPerSecond;
+        interval = rate > 0 ? Math.round(1000 / rate) : 0;
+        entries = new Entry[env.config.players];
+        workers = new Thread[threads];
+    }
+
+    /**
+     * Starts the worker threads, and returns once they all take part in the game timing, so that on virtual time the
+     * time cannot move past the first key presses before the workers are there to make them.
+     */
+    void start() {
+        CountDownLatch registered = new CountDownLatch(workers.length);
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = env.threads.newThread(() -> work(registered));
+            workers[i].setName("computer-players-" + i);
+            workers[i].start();
+        }
+        try {
+            registered.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Starts generating key presses for a computer player.
+     */
+    void schedule(Player player) {
+        queueLock.lock();
+        try {
+            Entry entry = new Entry(player);
+            entries[player.id] = entry;
+            enqueue(entry, env.clock.currentTimeMillis());
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Stops generating key presses for a computer player.
+     */
+    void cancel(Player player) {
+        queueLock.lock();
+        try {
+            Entry entry = entries[player.id];
+            if (entry != null) {
+                entries[player.id] = null;
+                entry.cancelled = true;
+                queue.remove(entry);
+            }
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Called when the key buffer of a computer player has room again, to resume its key presses if it was parked.
+     */
+    void wake(Player player) {
+        queueLock.lock();
+        try {
+            Entry entry = entries[player.id];
+            if (entry == null) return;
+            if (entry.parked) {
+                entry.parked = false;
+                enqueue(entry, env.clock.currentTimeMillis());
+            } else
+                entry.woken = true; // the worker pressing a key for it may have just found the buffer full
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Stops the worker threads and waits for them to finish.
+     */
+    void close() {
+        queueLock.lock();
+        try {
+            closed = true;
+            env.clock.signalAll(queueChanged);
+        } finally {
+            queueLock.unlock();
+        }
+        for (Thread worker : workers) {
+            if (worker == null) continue;
+            try {
+                worker.join();
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Must be called while holding queueLock.
+     */
+    private void enqueue(Entry entry, long due) {
+        entry.due = due;
+        entry.order = order++;
+        queue.add(entry);
+        env.clock.signalAll(queueChanged);
+    }
+
+    /**
+     * The main loop of the worker threads: waits for the earliest due computer player and presses a key for it.
+     * The workers take part in the game timing (see Clock.register), so on virtual time the computer players keep
+     * their rate (which is never 0 there, see Config.computerActionsPerSecond), and a worker waiting for a full key
+     * buffer counts as blocked like any other participant.
+     */
+    private void work(CountDownLatch registered) {
+        env.logger.info("Thread " + Thread.currentThread().getName() + " starting.");
+        env.clock.register();
+        registered.countDown();
+        try {
+            while (true) {
+                Entry entry;
+                queueLock.lock();
+                try {
+                    while (!closed && (queue.isEmpty() || queue.peek().due > env.clock.currentTimeMillis())) {
+                        if (queue.isEmpty()) env.clock.await(queueLock, queueChanged);
+                        else env.clock.await(queueLock, queueChanged, queue.peek().due - env.clock.currentTimeMillis());
+                    }
+                    if (closed) break;
+                    entry = queue.poll();
+                    entry.woken = false;
+                } finally {
+                    queueLock.unlock();
+                }
+
+                KeyPress result = entry.player.pressRandomKey();
+
+                queueLock.lock();
+                try {
+                    if (entry.cancelled) continue;
+                    long now = env.clock.currentTimeMillis();
+                    if (result == KeyPress.PRESSED)
+                        enqueue(entry, now + interval);
+                    else if (result == KeyPress.TABLE_BUSY)
+                        enqueue(entry, now + Math.max(interval, 1)); // the dealer is changing the cards
+                    else if (entry.woken)
+                        enqueue(entry, now);
+                    else
+                        entry.parked = true;
+                } finally {
+                    queueLock.unlock();
+                }
+            }
+        } catch (InterruptedException ignored) {
+        } finally {
+            env.clock.unregister();
+        }
+        env.logger.info("Thread " + Thread.currentThread().getName() + " terminated.");
+    }
+
+    /**
+     * The scheduling state of a single computer player. Guarded by queueLock.
+     */
+    private static final class Entry {
+
+        private final Player player;
+        private long due;
+        private long order;
+
+        /**
+         * True iff the key buffer of the player was full, and it waits to be woken up.
+         */
+        private boolean parked;
+
+        /**
+         * True iff the player was woken up while a worker was pressing a key for it.
+         */
+        private boolean woken;
+
+        private boolean cancelled;
+
+        Entry(Player player) {
+            this.player = player;
+        }
+    }
+}
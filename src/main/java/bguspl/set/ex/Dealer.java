@@ -3,14 +3,13 @@ package bguspl.set.ex;
 import bguspl.set.Env;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Random;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static java.lang.Math.max;
-import static java.lang.Math.min;
 
 /**
  * This class manages the dealer's threads and data
@@ -29,9 +28,27 @@ public class Dealer implements Runnable {
     private final Player[] players;
 
     /**
-     * The list of card ids that are left in the dealer's deck.
+     * The card ids that are left in the dealer's deck.
      */
-    private final List<Integer> deck;
+    private final IntDeck deck;
+
+    /**
+     * The source of randomness for dealing cards and choosing slots.
+     */
+    private final Random random = new Random();
+
+    /**
+     * Scratch arrays for the slots being filled or emptied, the cards dealt and the cards returned to the deck (reused
+     * to avoid allocations).
+     */
+    private final int[] slots;
+    private final int[] dealtCards;
+    private final int[] returnedCards;
+
+    /**
+     * The ids of the players whose claims are settled in the current pass (each player has at most one pending claim).
+     */
+    private final int[] claims;
 
     /**
      * True iff game should be terminated.
@@ -44,15 +61,46 @@ public class Dealer implements Runnable {
     private long reshuffleTime = Long.MAX_VALUE;
     private Thread[] plThreads;
 
+    /**
+     * Decides whether any legal set is left in the deck and on the table.
+     */
+    private final EndGameOracle endGame;
+
+    /**
+     * Generates the key presses of the computer players.
+     */
+    private final ComputerPlayerScheduler computerPlayers;
+
+    /**
+     * The time between two updates of the countdown display during the turn timeout warning. The warning shows
+     * hundredths of a second, but they only change every 100 ms (ten times a second, a little coarser than the 75 ms
+     * the dealer used to poll at): refreshing every 10 ms would wake the dealer a hundred times a second, and on
+     * virtual time would move the time in steps ten times smaller.
+     */
+    private static final long WARNING_REFRESH_MILLIS = 100;
+
+    /**
+     * The number of times the dealer woke up, for the log.
+     */
+    private long wakeups;
+
     private boolean needNewCards = true;
-    private Object dealerLock = new Object();
+    private final Lock dealerLock = new ReentrantLock();
+    private final Condition dealerWoken = dealerLock.newCondition();
 
     public Dealer(Env env, Table table, Player[] players) {
         this.env = env;
         this.table = table;
         this.players = players;
-        deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
+        deck = IntDeck.full(env.config.deckSize);
+        slots = new int[env.config.tableSize];
+        dealtCards = new int[env.config.tableSize];
+        returnedCards = new int[env.config.tableSize];
+        claims = new int[players.length];
         plThreads = new Thread[players.length];
+        endGame = new EndGameOracle(env, table);
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), env.config.computerPlayers);
+        computerPlayers = new ComputerPlayerScheduler(env, threads);
     }
 
     /**
@@ -61,20 +109,29 @@ public class Dealer implements Runnable {
     @Override
     public void run() {
         env.logger.info("Thread " + Thread.currentThread().getName() + " starting.");
+        env.clock.register();
+        long start = env.clock.currentTimeMillis();
+        computerPlayers.start();
         for (int i = 0; i < players.length; i++) {
             Thread curr = players[i].createThread();
             plThreads[i] = curr;
             curr.start();
         }
-        while (!shouldFinish()) {
-            shuffleTable();
-            reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis + 999;
-            timerLoop();
-            updateTimerDisplay(false);
-            removeAllCardsFromTable();
+        try {
+            while (!shouldFinish()) {
+                shuffleTable();
+                reshuffleTime = env.clock.currentTimeMillis() + env.config.turnTimeoutMillis + 999;
+                timerLoop();
+                updateTimerDisplay(false);
+                removeAllCardsFromTable();
+            }
+            announceWinners();
+        } finally {
+            // the players may still be frozen, and their freeze must be able to end while the dealer joins them
+            env.clock.unregister();
         }
-        announceWinners();
         terminate();
+        env.logger.info("dealer woke up " + wakeups + " times in " + (env.clock.currentTimeMillis() - start) / 1000 + " seconds.");
         env.logger.info("Thread " + Thread.currentThread().getName() + " terminated.");
     }
 
@@ -82,7 +139,7 @@ public class Dealer implements Runnable {
      * The inner loop of the dealer thread that runs as long as the countdown did not time out.
      */
     private void timerLoop() {
-        while (!terminate && System.currentTimeMillis() < reshuffleTime) {
+        while (!terminate && env.clock.currentTimeMillis() < reshuffleTime && !shouldFinish()) {
             sleepUntilWokenOrTimeout();
             updateTimerDisplay(false);
             removeCardsFromTable();
@@ -102,7 +159,16 @@ public class Dealer implements Runnable {
             } catch (InterruptedException e) {
             }
         }
+        computerPlayers.close();
         terminate = true;
+        notifyDealer();
+    }
+
+    /**
+     * @return - the scheduler that generates the key presses of the computer players.
+     */
+    ComputerPlayerScheduler computerPlayers() {
+        return computerPlayers;
     }
 
     /**
@@ -111,71 +177,130 @@ public class Dealer implements Runnable {
      * @return true iff the game should be finished.
      */
     private boolean shouldFinish() {
-        return terminate || env.util.findSets(deck, 1).size() == 0;
+        return terminate || !endGame.hasSetsLeft(deck);
     }
 
     /**
      * Checks cards should be removed from the table and removes them.
+     * All the pending claims are settled in one pass, in the order they were made. A claim that lost a card to an
+     * earlier claim of the same pass lost its tokens there too, so it is released with neither a point nor a penalty.
      */
-    private void removeCardsFromTable() {
-        if (!table.setQueue.isEmpty()) {
-            int id = table.setQueue.poll();
+    void removeCardsFromTable() {
+        settleTakenSets();
+        int count = 0;
+        for (Integer id; (id = table.setQueue.poll()) != null; )
+            claims[count++] = id;
+
+        boolean removed = false;
+        for (int c = 0; c < count; c++) {
+            int id = claims[c];
             int[] playerSlots = players[id].getTokens();
             if (players[id].realSet()) {
-                int[] setToCheck = {table.slotToCard[playerSlots[0]], table.slotToCard[playerSlots[1]], table.slotToCard[playerSlots[2]]};
-                boolean isLegalSet = env.util.testSet(setToCheck);
+                boolean isLegalSet = env.util.testSet(table.slotToCard[playerSlots[0]], table.slotToCard[playerSlots[1]], table.slotToCard[playerSlots[2]]);
                 if (isLegalSet) {
                     table.shouldWait = true;
-                    for (int i = 0; i < playerSlots.length; i++) {
-                        for (int j = 0; j < env.config.players; j++) {
-                            if (table.slotToPlayer[j][playerSlots[i]])
-                                players[j].removeToken(playerSlots[i]);
-                        }
-                        table.removeCard(playerSlots[i]);
-                    }
-                    needNewCards = true;
-                    updateTimerDisplay(true);
+                    removeSet(playerSlots);
+                    removed = true;
                     players[id].setPenalty(1);
-                    table.shouldWait = false;
                 } else {
                     players[id].setPenalty(2);
                 }
             }
             players[id].release();
         }
+        if (removed) {
+            needNewCards = true;
+            updateTimerDisplay(true);
+            table.shouldWait = false;
+        }
+    }
+
+    /**
+     * Removes the cards of a legal set from the table, together with the tokens of all the players on them.
+     */
+    private void removeSet(int[] setSlots) {
+        for (int i = 0; i < setSlots.length; i++) {
+            for (int word = 0; word < table.tokenWords(); word++) {
+                for (long tokens = table.tokens(setSlots[i], word); tokens != 0; tokens &= tokens - 1)
+                    players[word * 64 + Long.numberOfTrailingZeros(tokens)].removeToken(setSlots[i]);
+            }
+        }
+        table.removeCards(setSlots, setSlots.length);
+    }
+
+    /**
+     * Removes the cards of the sets the players took by themselves (see Config.optimisticClaims). The players were
+     * already scored, so only the table and the countdown are left to update.
+     */
+    private void settleTakenSets() {
+        boolean removed = false, shouldWait = table.shouldWait;
+        for (int[] setSlots; (setSlots = table.takenSets.poll()) != null; ) {
+            table.shouldWait = true;
+            removeSet(setSlots);
+            for (int slot : setSlots)
+                table.unlockSlot(slot);
+            removed = true;
+        }
+        if (removed) {
+            needNewCards = true;
+            updateTimerDisplay(true);
+            table.shouldWait = shouldWait;
+        }
+    }
+
+    /**
+     * Takes a slot before changing its card. A claim settled by a player may hold the slot for a moment, and a legal
+     * one holds it until its cards are removed, so taken sets are settled while waiting.
+     */
+    private void lockSlot(int slot) {
+        while (!table.lockSlot(slot)) {
+            settleTakenSets();
+            Thread.yield();
+        }
     }
 
     public void shuffleTable() {
         table.shouldWait = true;
-        Random cardRandom = new Random();
-        List<Integer> slots = new ArrayList<>();
         for (int i = 0; i < env.config.tableSize; i++)
-            slots.add(i);
-        Collections.shuffle(slots);
-        for (int i = 0; i < min(env.config.tableSize, deck.size()); i++) {
-            int cardIdx = cardRandom.nextInt(deck.size());
-            table.placeCard(deck.remove(cardIdx), slots.get(i));
-        }
+            slots[i] = i;
+        fillSlots(env.config.tableSize);
         table.shouldWait = false;
     }
 
+    /**
+     * Places random cards from the deck in the first count entries of the slots array, as one change of the table.
+     * If the deck runs out, the slots left empty are random: only as many slots as there are cards are shuffled (a
+     * partial Fisher-Yates shuffle), so this costs time proportional to the number of cards dealt.
+     *
+     * @param count - the number of slots to fill.
+     */
+    private void fillSlots(int count) {
+        int dealt = deck.deal(random, dealtCards, count);
+        for (int i = 0; dealt < count && i < dealt; i++) {
+            int j = i + random.nextInt(count - i);
+            int slot = slots[j];
+            slots[j] = slots[i];
+            slots[i] = slot;
+        }
+        for (int i = 0; i < dealt; i++)
+            lockSlot(slots[i]);
+        table.placeCards(dealtCards, slots, dealt);
+        for (int i = 0; i < dealt; i++)
+            table.unlockSlot(slots[i]);
+    }
+
     /**
      * Check if any cards can be removed from the deck and placed on the table.
      */
     private void placeCardsOnTable() {
         if (deck.size() > 0) {
             if (needNewCards) {
-                Random cardRandom = new Random();
-                List<Integer> slots = new ArrayList<>();
+                int count = 0;
                 for (int i = 0; i < env.config.tableSize; i++) {
-                    if (table.slotToCard[i] == null)
-                        slots.add(i);
-                }
-                Collections.shuffle(slots);
-                for (int i = 0; i < slots.size(); i++) {
-                    int cardIdx = cardRandom.nextInt(deck.size());
-                    table.placeCard(deck.remove(cardIdx), slots.get(i));
+                    if (table.slotToCard[i] == Table.EMPTY)
+                        slots[count++] = i;
                 }
+                fillSlots(count);
                 needNewCards = false;
             }
 //        } else {
@@ -191,15 +316,38 @@ public class Dealer implements Runnable {
     }
 
     /**
-     * Sleep for a fixed amount of time or until the thread is awakened for some purpose.
+     * Sleep until the next deadline of the dealer or until the thread is awakened for some purpose: a claim to settle
+     * or the termination of the game. The deadline is the next visible change of the countdown (see nextDeadline).
      */
-    private void sleepUntilWokenOrTimeout() {
-        synchronized (dealerLock) {
+    void sleepUntilWokenOrTimeout() {
+        long deadline = nextDeadline();
+        dealerLock.lock();
+        try {
             try {
-                dealerLock.wait(75);
+                // claims are queued before the dealer is signalled, so checking the queue here loses no signal
+                for (long left = deadline - env.clock.currentTimeMillis(); !terminate && table.setQueue.isEmpty() && table.takenSets.isEmpty()
+                        && left > 0;
+                     left = deadline - env.clock.currentTimeMillis())
+                    env.clock.await(dealerLock, dealerWoken, left);
             } catch (InterruptedException e) {
             }
+        } finally {
+            dealerLock.unlock();
         }
+        ++wakeups;
+    }
+
+    /**
+     * @return - the time the countdown display changes next: when the seconds shown change, when the warning starts,
+     * every WARNING_REFRESH_MILLIS during the warning, and at the reshuffle time at the latest.
+     */
+    private long nextDeadline() {
+        long now = env.clock.currentTimeMillis();
+        long remaining = reshuffleTime - now;
+        if (remaining <= env.config.turnTimeoutWarningMillis)
+            return now + Math.min(remaining, WARNING_REFRESH_MILLIS);
+        long next = Math.min(remaining, remaining % 1000 + 1);
+        return now + Math.min(next, remaining - env.config.turnTimeoutWarningMillis);
     }
 
     /**
@@ -207,13 +355,13 @@ public class Dealer implements Runnable {
      */
     private void updateTimerDisplay(boolean reset) {
         if (reset) {
-            env.ui.setCountdown(reshuffleTime - System.currentTimeMillis(), false);
-            reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis + 999;
+            env.ui.setCountdown(reshuffleTime - env.clock.currentTimeMillis(), false);
+            reshuffleTime = env.clock.currentTimeMillis() + env.config.turnTimeoutMillis + 999;
         } else {
-            if (reshuffleTime - System.currentTimeMillis() <= env.config.turnTimeoutWarningMillis) {
-                env.ui.setCountdown(max(0, reshuffleTime - System.currentTimeMillis()), true);
+            if (reshuffleTime - env.clock.currentTimeMillis() <= env.config.turnTimeoutWarningMillis) {
+                env.ui.setCountdown(max(0, reshuffleTime - env.clock.currentTimeMillis()), true);
             } else
-                env.ui.setCountdown(reshuffleTime - System.currentTimeMillis(), false);
+                env.ui.setCountdown(reshuffleTime - env.clock.currentTimeMillis(), false);
         }
     }
 
@@ -226,13 +374,20 @@ public class Dealer implements Runnable {
         for (int i = 0; i < players.length; i++) {
             players[i].removeTokens();
         }
+        for (int i = 0; i < env.config.tableSize; i++)
+            lockSlot(i);
+        int count = 0;
         for (int i = 0; i < env.config.tableSize; i++) {
-            Integer card = table.slotToCard[i];
-            if (card != null) {
-                deck.add(card);
-                table.removeCard(i);
+            int card = table.slotToCard[i];
+            if (card != Table.EMPTY) {
+                slots[count] = i;
+                returnedCards[count++] = card;
             }
         }
+        table.removeCards(slots, count);
+        for (int i = 0; i < env.config.tableSize; i++)
+            table.unlockSlot(i);
+        deck.addAll(returnedCards, count);
     }
 
     /**
@@ -256,8 +411,11 @@ public class Dealer implements Runnable {
     }
 
     public void notifyDealer() {
-        synchronized (dealerLock) {
-            dealerLock.notifyAll();
+        dealerLock.lock();
+        try {
+            env.clock.signalAll(dealerWoken);
+        } finally {
+            dealerLock.unlock();
         }
     }
 }
\ No newline at end of file
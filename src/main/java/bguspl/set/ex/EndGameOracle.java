@@ -0,0 +1,78 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+/**
+ * This class decides whether any legal set is left among the cards in the deck and on the table.
+ * The verdict is cached until the cards on the table or the size of the deck change.
+ */
+class EndGameOracle {
+
+    /**
+     * The largest number of cards without a set (a cap set) in a deck with a feature size of 3, indexed by the
+     * feature count. Any larger collection of cards is guaranteed to contain a set. Only the proven values are listed.
+     */
+    private static final int[] MAX_CAP_SET = {1, 2, 4, 9, 20, 45, 112};
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The table whose cards are counted together with the deck.
+     */
+    private final Table table;
+
+    /**
+     * The table version and deck size for which the cached verdict was computed.
+     */
+    private long cachedVersion = -1;
+    private int cachedDeckSize = -1;
+    private boolean cachedVerdict;
+
+    EndGameOracle(Env env, Table table) {
+        this.env = env;
+        this.table = table;
+    }
+
+    /**
+     * Checks if there is at least one legal set in the union of the deck and the cards on the table.
+     *
+     * @param deck - the cards left in the dealer's deck.
+     * @return - true iff a legal set can still be formed.
+     * @post - the verdict is cached until a card is placed on or removed from the table or the deck size changes.
+     */
+    boolean hasSetsLeft(IntDeck deck) {
+        long version = table.version();
+        if (version != cachedVersion || deck.size() != cachedDeckSize) {
+            cachedVerdict = search(deck);
+            cachedVersion = version;
+            cachedDeckSize = deck.size();
+        }
+        return cachedVerdict;
+    }
+
+    private boolean search(IntDeck deck) {
+        int cards = deck.size() + table.countCards();
+        if (env.config.featureSize == 3 && env.config.featureCount < MAX_CAP_SET.length
+                && cards > MAX_CAP_SET[env.config.featureCount])
+            return true;
+        if (table.hasSet())
+            return true;
+
+        int[] remaining = new int[cards];
+        int count = 0;
+        for (int i = 0; i < deck.size(); ++i)
+            remaining[count++] = deck.get(i);
+        for (int card : table.slotToCard)
+            if (card != Table.EMPTY)
+                remaining[count++] = card;
+        boolean[] found = {false};
+        env.util.forEachSet(remaining, count, set -> {
+            found[0] = true;
+            return false;
+        });
+        return found[0];
+    }
+}
@@ -0,0 +1,127 @@
+package bguspl.set.ex;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A deck of card ids backed by a primitive int array.
+ * The order of the cards is meaningless: cards are always drawn at random, so a drawn card is replaced by the last
+ * card in the array and every operation costs time proportional to the number of cards it moves.
+ *
+ * @inv 0 <= size <= cards.length
+ */
+public class IntDeck {
+
+    /**
+     * The cards in the deck (only the first size entries are valid).
+     */
+    private final int[] cards;
+
+    /**
+     * The number of cards in the deck.
+     */
+    private int size;
+
+    /**
+     * Creates an empty deck.
+     *
+     * @param capacity - the maximal number of cards the deck may hold.
+     */
+    public IntDeck(int capacity) {
+        cards = new int[capacity];
+    }
+
+    /**
+     * Creates a deck holding all the cards 0..deckSize-1.
+     *
+     * @param deckSize - the number of cards in the game.
+     * @return - the full deck.
+     */
+    public static IntDeck full(int deckSize) {
+        IntDeck deck = new IntDeck(deckSize);
+        for (int card = 0; card < deckSize; ++card)
+            deck.cards[card] = card;
+        deck.size = deckSize;
+        return deck;
+    }
+
+    /**
+     * @return - the number of cards in the deck.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return - true iff the deck has no cards.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param i - an index between 0 and size-1.
+     * @return - the card at the given index.
+     */
+    public int get(int i) {
+        return cards[i];
+    }
+
+    /**
+     * Returns a card to the deck.
+     *
+     * @param card - the card id.
+     * @pre - size < capacity.
+     */
+    public void add(int card) {
+        cards[size++] = card;
+    }
+
+    /**
+     * Returns several cards to the deck at once.
+     *
+     * @param returned - an array holding the returned cards.
+     * @param count    - the number of cards (from the start of the array) to return.
+     * @pre - size + count <= capacity.
+     */
+    public void addAll(int[] returned, int count) {
+        System.arraycopy(returned, 0, cards, size, count);
+        size += count;
+    }
+
+    /**
+     * Removes a random card from the deck in O(1).
+     *
+     * @param random - the source of randomness.
+     * @return - the card drawn.
+     * @pre - the deck is not empty.
+     */
+    public int draw(Random random) {
+        int i = random.nextInt(size);
+        int card = cards[i];
+        cards[i] = cards[--size];
+        return card;
+    }
+
+    /**
+     * Deals random cards out of the deck, i.e. performs count steps of a Fisher-Yates shuffle on the end of the deck.
+     *
+     * @param random - the source of randomness.
+     * @param dealt  - an array to write the dealt cards into.
+     * @param count  - the number of cards to deal.
+     * @return - the number of cards actually dealt (less than count if the deck ran out).
+     */
+    public int deal(Random random, int[] dealt, int count) {
+        int n = Math.min(count, size);
+        for (int i = 0; i < n; ++i)
+            dealt[i] = draw(random);
+        return n;
+    }
+
+    /**
+     * @return - a copy of the cards in the deck.
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(cards, size);
+    }
+}
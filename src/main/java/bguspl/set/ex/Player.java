@@ -2,9 +2,11 @@ package bguspl.set.ex;
 
 import bguspl.set.Env;
 
-import java.util.Queue;
-import java.util.Random;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This class manages the players' threads and data
@@ -34,11 +36,6 @@ public class Player implements Runnable {
      */
     private Thread playerThread;
 
-    /**
-     * The thread of the AI (computer) player (an additional thread used to generate key presses).
-     */
-    private Thread aiThread;
-
     /**
      * True iff the player is human (not a computer player).
      */
@@ -54,24 +51,53 @@ public class Player implements Runnable {
      */
     private int score;
     /**
-     * This array indicates what slots the player chose to put his tokens.
+     * This array indicates what slots the player chose to put his tokens. Its monitor guards it, as the dealer removes
+     * tokens too.
      */
-    private int[] tokens;
+    private final int[] tokens;
     /**
      * Number of tokens the player has placed so far.
      */
     public int numOfTokens = 0;
     /**
-     * This queue holds the player's key presses by order of FIFO.
+     * The player's key presses in FIFO order: a ring buffer of up to SETSIZE slots starting at keyHead, together with
+     * the time (System.nanoTime) each key was pressed at. Guarded by playerLock.
      */
-    private Queue<Integer> keyQueue;
+    private final int[] keys;
+    private final long[] keyTimes;
+    private int keyHead;
+    private int keyCount;
     private volatile int penalty = 0;
     private final int SETSIZE = 3;
 
-    private Object playerLock = new Object();
+    /**
+     * Guards the key presses and the verdict. The player thread waits on playerChanged for a key press, a verdict or
+     * termination.
+     */
+    private final Lock playerLock = new ReentrantLock();
+    private final Condition playerChanged = playerLock.newCondition();
+
+    /**
+     * True iff the player claimed a set and waits for the dealer's verdict. Guarded by playerLock.
+     */
+    private boolean awaitingVerdict;
+
+    /**
+     * The number of key presses turned into token moves, and their total and maximal latency (from the key press to
+     * the token move) in nanoseconds. Only accessed by the player thread.
+     */
+    private long keysHandled;
+    private long keyLatencyTotal;
+    private long keyLatencyMax;
 
     private Dealer dealer;
 
+    /**
+     * Generates the key presses of a computer player (null for a human player, or before the player thread starts).
+     * Only accessed by the player thread.
+     */
+    private ComputerPlayerScheduler computerPlayers;
+
     /**
      * The class constructor.
      *
@@ -89,76 +115,183 @@ public class Player implements Runnable {
         tokens = new int[SETSIZE];
         for (int i = 0; i < tokens.length; i++)
             tokens[i] = -1;
-        keyQueue = new ArrayBlockingQueue<>(SETSIZE);
+        keys = new int[SETSIZE];
+        keyTimes = new long[SETSIZE];
         this.dealer = dealer;
     }
 
     /**
      * The main player thread of each player starts here (main loop for the player thread).
+     * The thread blocks until there is a key press to handle, a verdict to serve or the game terminates.
      */
     @Override
     public void run() {
         playerThread = Thread.currentThread();
         env.logger.info("Thread " + Thread.currentThread().getName() + " starting.");
-        if (!human) createArtificialIntelligence();
-
-        while (!terminate) {
-            if (penalty == 1) {
-                point();
-                penalty = 0;
-            } else if (penalty == 2) {
-                penalty();
-                penalty = 0;
+        env.clock.register();
+        try {
+            if (!human) {
+                computerPlayers = dealer.computerPlayers();
+                computerPlayers.schedule(this);
             }
-            if (!keyQueue.isEmpty() & numOfTokens <= SETSIZE) {
-                int currSlot = keyQueue.poll();
-                boolean exists = false;
-                for (int i = 0; i < tokens.length; i++) {
-                    if (tokens[i] == currSlot)
-                        exists = true;
-                }
-                if (exists)
-                    removeToken(currSlot);
-                else if (numOfTokens < SETSIZE) {
-                    placeToken(currSlot);
-                    if (numOfTokens == SETSIZE) {
-                        synchronized (table.setQueue) {
-                            table.setQueue.add(id);
-                        }
-                        try {
-                            synchronized (playerLock) {
-                                dealer.notifyDealer();
-                                playerLock.wait();
-                            }
-                        } catch (InterruptedException e) {
-                        }
+
+            while (!terminate) {
+                int currSlot;
+                long pressedAt;
+                playerLock.lock();
+                try {
+                    while (!terminate && penalty == 0 && (awaitingVerdict || keyCount == 0))
+                        env.clock.await(playerLock, playerChanged);
+                    if (terminate) break;
+                    if (penalty != 0) {
+                        currSlot = -1;
+                        pressedAt = 0;
+                    } else {
+                        currSlot = keys[keyHead];
+                        pressedAt = keyTimes[keyHead];
+                        keyHead = (keyHead + 1) % SETSIZE;
+                        --keyCount;
+                        env.clock.signalAll(playerChanged); // the key buffer has room again
+                        if (computerPlayers != null) computerPlayers.wake(this);
                     }
+                } finally {
+                    playerLock.unlock();
+                }
+
+                if (currSlot == -1) {
+                    if (penalty == 1) point();
+                    else penalty();
+                    penalty = 0;
+                } else {
+                    handleKey(currSlot);
+                    long latency = System.nanoTime() - pressedAt;
+                    ++keysHandled;
+                    keyLatencyTotal += latency;
+                    keyLatencyMax = Math.max(keyLatencyMax, latency);
                 }
             }
-        }
-        if (!human) try {
-            aiThread.join();
         } catch (InterruptedException ignored) {
+        } finally {
+            // a player thread that dies must not leave the virtual time waiting for it, or keys pressed for it
+            if (computerPlayers != null) computerPlayers.cancel(this);
+            env.clock.unregister();
         }
+        if (keysHandled > 0)
+            env.logger.info("player " + id + " key to token latency: average " + keyLatencyTotal / keysHandled / 1000
+                    + "us, max " + keyLatencyMax / 1000 + "us over " + keysHandled + " keys.");
         env.logger.info("Thread " + Thread.currentThread().getName() + " terminated.");
     }
 
     /**
-     * Creates an additional thread for an AI (computer) player. The main loop of this thread repeatedly generates
-     * key presses. If the queue of key presses is full, the thread waits until it is not full.
+     * Places or removes a token according to a key press, and claims a set when the third token is placed.
+     *
+     * @param currSlot - the slot of the key pressed.
      */
-    private void createArtificialIntelligence() {
-        // note: this is a very, very smart AI (!)
-        aiThread = new Thread(() -> {
-            env.logger.info("Thread " + Thread.currentThread().getName() + " starting.");
-            Random simulator = new Random();
-            while (!terminate) {
-                if (!table.shouldWait)
-                    keyPressed(simulator.nextInt(env.config.tableSize));
+    private void handleKey(int currSlot) {
+        // a token placed while its card was being removed is not on the table, and could never be picked up again
+        Table.Snapshot cards = table.snapshot();
+        for (int i = 0; i < tokens.length; i++) {
+            if (tokens[i] != -1 && cards.card(tokens[i]) == Table.EMPTY)
+                removeToken(tokens[i]);
+        }
+        boolean exists = false;
+        for (int i = 0; i < tokens.length; i++) {
+            if (tokens[i] == currSlot)
+                exists = true;
+        }
+        if (exists)
+            removeToken(currSlot);
+        else if (numOfTokens < SETSIZE) {
+            placeToken(currSlot);
+            if (numOfTokens == SETSIZE && env.config.optimisticClaims)
+                settleClaim();
+            else if (numOfTokens == SETSIZE) {
+                playerLock.lock();
+                try {
+                    awaitingVerdict = true;
+                } finally {
+                    playerLock.unlock();
+                }
+                synchronized (table.setQueue) {
+                    table.setQueue.add(id);
+                }
+                dealer.notifyDealer();
             }
-            env.logger.info("Thread " + Thread.currentThread().getName() + " terminated.");
-        }, "computer-" + id);
-        aiThread.start();
+        }
+    }
+
+    /**
+     * Settles a set claim on the player thread instead of the dealer's (see Config.optimisticClaims). The player takes
+     * the slots of its tokens, so their cards cannot change, and tests the cards. A legal set keeps the slots until
+     * the dealer removes its cards, and the point is given right away. Otherwise, the slots are given back, with a
+     * penalty if the cards were all there. A claim that lost a slot to another legal set or to the dealer changing
+     * its card is dropped with neither, and so is a claim whose tokens or cards changed since they were read, before
+     * the slots were taken (the dealer removes the tokens of the cards it takes away, and may deal new cards into
+     * their slots).
+     */
+    void settleClaim() {
+        int[] slots;
+        Table.Snapshot chosen;
+        synchronized (tokens) {
+            if (numOfTokens != SETSIZE) return;
+            slots = tokens.clone();
+            chosen = table.snapshot();
+        }
+        Arrays.sort(slots);
+        if (!table.claimSlots(id, slots)) return;
+        Table.Snapshot cards = table.snapshot();
+        if (!holdsTokens(slots) || !sameCards(chosen, cards, slots)) {
+            table.releaseSlots(slots);
+            return;
+        }
+        if (env.util.testSet(cards.card(slots[0]), cards.card(slots[1]), cards.card(slots[2]))) {
+            table.takeSlots(slots);
+            dealer.notifyDealer();
+            point();
+        } else {
+            table.releaseSlots(slots);
+            penalty();
+        }
+    }
+
+    /**
+     * @param slots - the slots of a claim, in ascending order.
+     * @return      - true iff the player's tokens are still on exactly these slots.
+     */
+    private boolean holdsTokens(int[] slots) {
+        int[] current = getTokens();
+        Arrays.sort(current);
+        return Arrays.equals(current, slots);
+    }
+
+    /**
+     * @return - true iff both snapshots hold the same cards in the slots, and none of them is empty.
+     */
+    private static boolean sameCards(Table.Snapshot chosen, Table.Snapshot cards, int[] slots) {
+        for (int slot : slots) {
+            if (cards.card(slot) == Table.EMPTY) return false;
+            if (cards.epoch() != chosen.epoch() && cards.card(slot) != chosen.card(slot)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Makes a single key press of an AI (computer) player on a random slot. Called by the computer player scheduler.
+     *
+     * @return - whether a key was pressed, or why not: the dealer is changing the cards, or the key buffer is full (the
+     * scheduler is then woken up once the player handles a key).
+     */
+    ComputerPlayerScheduler.KeyPress pressRandomKey() {
+        // note: this is a very, very smart AI (!)
+        playerLock.lock();
+        try {
+            if (keyCount == SETSIZE) return ComputerPlayerScheduler.KeyPress.BUFFER_FULL;
+        } finally {
+            playerLock.unlock();
+        }
+        if (table.shouldWait) return ComputerPlayerScheduler.KeyPress.TABLE_BUSY;
+        keyPressed(ThreadLocalRandom.current().nextInt(env.config.tableSize));
+        return ComputerPlayerScheduler.KeyPress.PRESSED;
     }
 
     /**
@@ -167,6 +300,12 @@ public class Player implements Runnable {
     public void terminate() {
         removeTokens();
         terminate = true;
+        playerLock.lock();
+        try {
+            env.clock.signalAll(playerChanged);
+        } finally {
+            playerLock.unlock();
+        }
     }
 
     /**
@@ -175,9 +314,19 @@ public class Player implements Runnable {
      * @param slot - the slot corresponding to the key pressed.
      */
     public void keyPressed(int slot) {
-        if (!table.shouldWait) {
-            if (table.slotToCard[slot] != null && keyQueue.size() < SETSIZE)
-                keyQueue.add(slot);
+        if (!table.shouldWait && table.snapshot().card(slot) != Table.EMPTY) {
+            playerLock.lock();
+            try {
+                if (keyCount < SETSIZE) {
+                    int tail = (keyHead + keyCount) % SETSIZE;
+                    keys[tail] = slot;
+                    keyTimes[tail] = System.nanoTime();
+                    ++keyCount;
+                    env.clock.signalAll(playerChanged);
+                }
+            } finally {
+                playerLock.unlock();
+            }
         }
     }
 
@@ -195,12 +344,12 @@ public class Player implements Runnable {
         try {
             for (int i = seconds; i > 0; i--) {
                 env.ui.setFreeze(id, i * 1000);
-                playerThread.sleep(1000);
+                env.clock.sleep(1000);
             }
         } catch (InterruptedException e) {
         }
         env.ui.setFreeze(id, 0);
-        keyQueue.clear();
+        clearKeys();
     }
 
     /**
@@ -211,12 +360,26 @@ public class Player implements Runnable {
         for (int i = seconds; i > 0; i--) {
             env.ui.setFreeze(id, i * 1000);
             try {
-                playerThread.sleep(1000);
+                env.clock.sleep(1000);
             } catch (InterruptedException e) {
             }
         }
         env.ui.setFreeze(id, 0);
-        keyQueue.clear();
+        clearKeys();
+    }
+
+    /**
+     * Drops the key presses made while the player was frozen.
+     */
+    private void clearKeys() {
+        playerLock.lock();
+        try {
+            keyCount = 0;
+            env.clock.signalAll(playerChanged);
+            if (computerPlayers != null) computerPlayers.wake(this);
+        } finally {
+            playerLock.unlock();
+        }
     }
 
     public int score() {
@@ -224,28 +387,31 @@ public class Player implements Runnable {
     }
 
     public void removeTokens() {
-        for (int i = 0; i < tokens.length; i++) {
-            if (tokens[i] != -1) {
-                table.removeToken(id, i);
-                tokens[i] = -1;
+        synchronized (tokens) {
+            for (int i = 0; i < tokens.length; i++) {
+                if (tokens[i] != -1) {
+                    table.removeToken(id, tokens[i]);
+                    tokens[i] = -1;
+                }
             }
+            numOfTokens = 0;
         }
-        numOfTokens = 0;
     }
 
     public void removeToken(int slot) {
-        synchronized (table) {
+        synchronized (tokens) {
             for (int i = 0; i < tokens.length; i++) {
-                if (tokens[i] == slot)
+                if (tokens[i] == slot) {
                     tokens[i] = -1;
+                    numOfTokens--;
+                }
             }
             table.removeToken(id, slot);
-            numOfTokens--;
         }
     }
 
     public void placeToken(int slot) {
-        synchronized (table) {
+        synchronized (tokens) {
             boolean placed = false;
             for (int i = 0; !placed && i < tokens.length; i++) {
                 if (tokens[i] == -1) {
@@ -259,30 +425,38 @@ public class Player implements Runnable {
     }
 
     public Thread createThread() {
-        playerThread = new Thread(this, "player" + id);
+        playerThread = env.threads.newThread(this);
+        playerThread.setName("player" + id);
         return playerThread;
     }
 
     public int[] getTokens() {
-        int[] copy = new int[tokens.length];
-        for (int i = 0; i < copy.length; i++)
-            copy[i] = tokens[i];
-        return copy;
+        synchronized (tokens) {
+            return tokens.clone();
+        }
     }
 
     public void setPenalty(int i) {
         penalty = i;
     }
 
+    /**
+     * Called by the dealer once it handled the player's claim (or when the game terminates).
+     */
     public void release() {
-        synchronized (playerLock) {
-            playerLock.notifyAll();
+        playerLock.lock();
+        try {
+            awaitingVerdict = false;
+            env.clock.signalAll(playerChanged);
+        } finally {
+            playerLock.unlock();
         }
     }
 
     public boolean realSet() {
+        Table.Snapshot cards = table.snapshot();
         for (int i : tokens) {
-            if (i == -1 || table.slotToCard[i] == null)
+            if (i == -1 || cards.card(i) == Table.EMPTY)
                 return false;
         }
         return true;
@@ -0,0 +1,149 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class keeps track of every legal set among the cards currently on the table.
+ * The index is updated incrementally whenever a card is added or removed, so queries never rescan the table.
+ *
+ * @inv sets contains exactly the legal sets among cards[0..size-1]
+ */
+class SetIndex {
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The cards currently in the index (in no particular order) and their number.
+     */
+    private final int[] cards;
+    private int size;
+
+    /**
+     * A bitmap of the cards currently in the index (bit i is set iff card i is in the index).
+     */
+    private final long[] present;
+
+    /**
+     * The legal sets among the cards in the index, each one sorted by card id.
+     */
+    private final List<int[]> sets = new ArrayList<>();
+
+    /**
+     * Scratch array holding the cards that are completed to a set with the added card.
+     */
+    private final int[] partial;
+
+    SetIndex(Env env) {
+        this.env = env;
+        cards = new int[env.config.tableSize];
+        present = new long[(env.config.deckSize + 63) >>> 6];
+        partial = new int[Math.max(1, env.config.featureSize - 1)];
+    }
+
+    private boolean contains(int card) {
+        return card >= 0 && (present[card >>> 6] & (1L << card)) != 0;
+    }
+
+    /**
+     * Adds a card to the index together with every set it forms with the cards already in it.
+     * For 3-card sets this completes the new card with each card in the index, i.e. O(tableSize).
+     *
+     * @param card - the card placed on the table.
+     */
+    synchronized void add(int card) {
+        if (contains(card)) return;
+        if (partial.length == 1)
+            addPairs(card);
+        else {
+            partial[0] = card;
+            collectSets(card, 1, 0);
+        }
+        present[card >>> 6] |= 1L << card;
+        cards[size++] = card;
+    }
+
+    /**
+     * With FeatureSize=2 every pair of cards is a set (each feature is either the same or different on both), and
+     * completing a single card gives the card itself, so the new card forms a set with every card in the index.
+     */
+    private void addPairs(int card) {
+        for (int i = 0; i < size; ++i)
+            sets.add(card < cards[i] ? new int[]{card, cards[i]} : new int[]{cards[i], card});
+    }
+
+    /**
+     * Chooses the cards that together with the new card (partial[0]) are completed to a set. Each set is found
+     * exactly once since the completing card must have a higher id than every chosen card.
+     */
+    private void collectSets(int card, int chosen, int from) {
+        if (chosen == partial.length) {
+            int missing = env.util.completeSet(partial);
+            if (missing != card && contains(missing) && missing > maxChosen()) {
+                int[] set = Arrays.copyOf(partial, partial.length + 1);
+                set[partial.length] = missing;
+                Arrays.sort(set);
+                sets.add(set);
+            }
+            return;
+        }
+        for (int i = from; i < size; ++i) {
+            partial[chosen] = cards[i];
+            collectSets(card, chosen + 1, i + 1);
+        }
+    }
+
+    private int maxChosen() {
+        int max = -1;
+        for (int i = 1; i < partial.length; ++i)
+            max = Math.max(max, partial[i]);
+        return max;
+    }
+
+    /**
+     * Removes a card from the index together with every set that contains it.
+     *
+     * @param card - the card removed from the table.
+     */
+    synchronized void remove(int card) {
+        if (!contains(card)) return;
+        present[card >>> 6] &= ~(1L << card);
+        for (int i = 0; i < size; ++i)
+            if (cards[i] == card) {
+                cards[i] = cards[--size];
+                break;
+            }
+        sets.removeIf(set -> {
+            for (int c : set)
+                if (c == card) return true;
+            return false;
+        });
+    }
+
+    /**
+     * @return - true iff there is at least one legal set in the index.
+     */
+    synchronized boolean hasSet() {
+        return !sets.isEmpty();
+    }
+
+    /**
+     * @return - the number of legal sets in the index.
+     */
+    synchronized int countSets() {
+        return sets.size();
+    }
+
+    /**
+     * @return - a copy of the legal sets in the index (each one sorted by card id).
+     */
+    synchronized List<int[]> sets() {
+        return new ArrayList<>(sets);
+    }
+}
@@ -4,15 +4,18 @@ import bguspl.set.Env;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
+import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.stream.Collectors;
 
 /**
  * This class contains the data that is visible to the player.
  *
- * @inv slotToCard[x] == y iff cardToSlot[y] == x
+ * @inv slotToCard[x] == y iff slotOf(y) == x
  */
 public class Table {
 
@@ -22,39 +25,92 @@ public class Table {
     private final Env env;
 
     /**
-     * Mapping between a slot and the card placed in it (null if none).
+     * The value of an empty entry in slotToCard and cardToSlot.
      */
-    protected final Integer[] slotToCard; // card per slot (if any)
+    public static final int EMPTY = -1;
 
     /**
-     * Mapping between a card and the slot it is in (null if none).
+     * Decks up to this size (or up to DENSE_CARDS_PER_SLOT times the table size) get a deck-sized cardToSlot array.
+     * Larger decks leave it null and slotOf scans slotToCard instead, which is only tableSize entries long.
      */
-    protected final Integer[] cardToSlot; // slot per card (if any)
+    private static final int DENSE_DECK_SIZE = 4096;
+    private static final int DENSE_CARDS_PER_SLOT = 64;
+
+    /**
+     * Mapping between a slot and the card placed in it (EMPTY if none).
+     */
+    protected final int[] slotToCard; // card per slot (if any)
+
     /**
-     * Mapping between a player and the slots the player put tokens on.
+     * Mapping between a card and the slot it is in (EMPTY if none), or null if the deck is too large for it.
      */
-    protected boolean[][] slotToPlayer;
+    protected final int[] cardToSlot; // slot per card (if any)
+    /**
+     * The players with a token on each slot, as bitmasks of tokenWords words per slot: player p has a token on slot s
+     * iff bit p % 64 of word s * tokenWords + p / 64 is set. Updated lock free, with compare-and-set.
+     */
+    private final AtomicLongArray slotTokens;
+    private final int tokenWords;
     /**
      * This queue will store the sets that need to be checked
      */
     protected BlockingQueue<Integer> setQueue;
 
+    /**
+     * The value of a slot owner for a free slot, a slot whose card the dealer is changing, and a slot whose card was
+     * taken by a legal set claimed optimistically (see claimSlots). Other owners are the ids of claiming players.
+     */
+    static final int FREE = -1;
+    static final int DEALER = -2;
+    static final int TAKEN = -3;
+
+    /**
+     * The owner of each slot (see FREE), changed with compare-and-set.
+     */
+    private final AtomicIntegerArray slotOwners;
+
+    /**
+     * The slots of the legal sets claimed optimistically, whose cards the dealer has yet to remove.
+     */
+    protected final Queue<int[]> takenSets = new ConcurrentLinkedQueue<>();
+
     protected volatile boolean shouldWait = true;
 
+    /**
+     * The cards on the table as of the latest placement or removal. Replaced (never changed) on every change, so
+     * threads other than the dealer read a consistent layout with a single volatile read.
+     */
+    private volatile Snapshot snapshot;
+
+    /**
+     * The legal sets among the cards currently on the table (updated on every card placement and removal).
+     */
+    private final SetIndex setIndex;
+
     /**
      * Constructor for testing.
      *
      * @param env        - the game environment objects.
-     * @param slotToCard - mapping between a slot and the card placed in it (null if none).
-     * @param cardToSlot - mapping between a card and the slot it is in (null if none).
+     * @param slotToCard - mapping between a slot and the card placed in it (EMPTY if none).
+     * @param cardToSlot - mapping between a card and the slot it is in (EMPTY if none), or null to look slots up in
+     *                   slotToCard.
      */
-    public Table(Env env, Integer[] slotToCard, Integer[] cardToSlot) {
+    public Table(Env env, int[] slotToCard, int[] cardToSlot) {
 
         this.env = env;
         this.slotToCard = slotToCard;
         this.cardToSlot = cardToSlot;
-        slotToPlayer = new boolean[env.config.players][env.config.tableSize];
+        tokenWords = (env.config.players + 63) / 64;
+        slotTokens = new AtomicLongArray(env.config.tableSize * tokenWords);
+        slotOwners = new AtomicIntegerArray(slotToCard.length);
+        for (int slot = 0; slot < slotToCard.length; slot++)
+            slotOwners.set(slot, FREE);
         setQueue = new LinkedBlockingQueue<Integer>();
+        setIndex = new SetIndex(env);
+        for (int card : slotToCard)
+            if (card != EMPTY)
+                setIndex.add(card);
+        snapshot = new Snapshot(0, slotToCard.clone());
     }
 
     /**
@@ -64,24 +120,90 @@ public class Table {
      */
     public Table(Env env) {
 
-        this(env, new Integer[env.config.tableSize], new Integer[env.config.deckSize]);
-        slotToPlayer = new boolean[env.config.players][env.config.tableSize];
+        this(env, emptyArray(env.config.tableSize), denseCardToSlot(env.config.deckSize, env.config.tableSize));
         setQueue = new LinkedBlockingQueue<Integer>();
     }
 
+    private static int[] emptyArray(int size) {
+        int[] array = new int[size];
+        Arrays.fill(array, EMPTY);
+        return array;
+    }
+
+    private static int[] denseCardToSlot(int deckSize, int tableSize) {
+        if (deckSize > DENSE_DECK_SIZE && deckSize > DENSE_CARDS_PER_SLOT * tableSize) return null;
+        return emptyArray(deckSize);
+    }
+
+    /**
+     * Finds the slot a card is placed in.
+     *
+     * @param card - the card id.
+     * @return - the slot of the card, or EMPTY if it is not on the table.
+     */
+    public int slotOf(int card) {
+        if (cardToSlot != null) return cardToSlot[card];
+        for (int slot = 0; slot < slotToCard.length; ++slot)
+            if (slotToCard[slot] == card)
+                return slot;
+        return EMPTY;
+    }
+
     /**
      * This method prints all possible legal sets of cards that are currently on the table.
      */
     public void hints() {
-        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
-        env.util.findSets(deck, Integer.MAX_VALUE).forEach(set -> {
+        Snapshot cards = snapshot;
+        setIndex.sets().forEach(set -> {
             StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
-            List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted().collect(Collectors.toList());
+            List<Integer> slots = Arrays.stream(set).mapToObj(cards::slotOf).sorted().collect(Collectors.toList());
+            if (slots.contains(EMPTY)) return; // the set changed while the hints were printed
             int[][] features = env.util.cardsToFeatures(set);
             System.out.println(sb.append("slots: ").append(slots).append(" features: ").append(Arrays.deepToString(features)));
         });
     }
 
+    /**
+     * Checks if there is a legal set among the cards on the table (without scanning the table).
+     *
+     * @return - true iff at least one legal set is currently on the table.
+     */
+    public boolean hasSet() {
+        return setIndex.hasSet();
+    }
+
+    /**
+     * Count the number of legal sets among the cards on the table (without scanning the table).
+     *
+     * @return - the number of legal sets currently on the table.
+     */
+    public int countSets() {
+        return setIndex.countSets();
+    }
+
+    /**
+     * Lists the legal sets among the cards on the table.
+     *
+     * @return - a list of the legal sets currently on the table, each one sorted by card id.
+     */
+    public List<int[]> sets() {
+        return setIndex.sets();
+    }
+
+    /**
+     * @return - a number that changes every time a card is placed on or removed from the table (the current epoch).
+     */
+    public long version() {
+        return snapshot.epoch;
+    }
+
+    /**
+     * @return - the cards on the table as of the latest placement or removal.
+     */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
     /**
      * Count the number of cards currently on the table.
      *
@@ -89,8 +211,8 @@ public class Table {
      */
     public int countCards() {
         int cards = 0;
-        for (Integer card : slotToCard)
-            if (card != null)
+        for (int card : slotToCard)
+            if (card != EMPTY)
                 ++cards;
         return cards;
     }
@@ -104,11 +226,13 @@ public class Table {
      */
     public void placeCard(int card, int slot) {
         try {
-            Thread.sleep(env.config.tableDelayMillis);
+            env.clock.sleep(env.config.tableDelayMillis);
         } catch (InterruptedException ignored) {}
         env.ui.placeCard(card, slot);
-        cardToSlot[card] = slot;
+        if (cardToSlot != null) cardToSlot[card] = slot;
         slotToCard[slot] = card;
+        setIndex.add(card);
+        publish();
     }
 
     /**
@@ -117,12 +241,61 @@ public class Table {
      */
     public void removeCard(int slot) {
         try {
-            Thread.sleep(env.config.tableDelayMillis);
+            env.clock.sleep(env.config.tableDelayMillis);
         } catch (InterruptedException ignored) {}
         env.ui.removeCard(slot);
         int card = slotToCard[slot];
-        slotToCard[slot] = null;
-        cardToSlot[card] = null;
+        slotToCard[slot] = EMPTY;
+        if (cardToSlot != null) cardToSlot[card] = EMPTY;
+        setIndex.remove(card);
+        publish();
+    }
+
+    /**
+     * Places several cards on the table as one change: a single delay, a single update of the user interface and a
+     * single new snapshot.
+     * @param cards - the card ids to place.
+     * @param slots - the slot of each card.
+     * @param count - the number of cards to place (the first count entries of cards and slots).
+     *
+     * @post - the cards placed are on the table, in their assigned slots.
+     */
+    public void placeCards(int[] cards, int[] slots, int count) {
+        if (count == 0) return;
+        try {
+            env.clock.sleep(env.config.tableBatchDelayMillis);
+        } catch (InterruptedException ignored) {}
+        env.ui.placeCards(cards, slots, count);
+        for (int i = 0; i < count; i++) {
+            if (cardToSlot != null) cardToSlot[cards[i]] = slots[i];
+            slotToCard[slots[i]] = cards[i];
+            setIndex.add(cards[i]);
+        }
+        publish();
+    }
+
+    /**
+     * Removes the cards from several grid slots as one change (see placeCards).
+     * @param slots - the slots from which to remove the cards.
+     * @param count - the number of slots (the first count entries of slots).
+     */
+    public void removeCards(int[] slots, int count) {
+        if (count == 0) return;
+        try {
+            env.clock.sleep(env.config.tableBatchDelayMillis);
+        } catch (InterruptedException ignored) {}
+        env.ui.removeCards(slots, count);
+        for (int i = 0; i < count; i++) {
+            int card = slotToCard[slots[i]];
+            slotToCard[slots[i]] = EMPTY;
+            if (cardToSlot != null) cardToSlot[card] = EMPTY;
+            setIndex.remove(card);
+        }
+        publish();
+    }
+
+    private void publish() {
+        snapshot = new Snapshot(snapshot.epoch + 1, slotToCard.clone());
     }
 
     /**
@@ -131,9 +304,13 @@ public class Table {
      * @param slot   - the slot on which to place the token.
      */
     public void placeToken(int player, int slot) {
-        if (slotToCard[slot] != null) {
+        if (snapshot.card(slot) != EMPTY) {
             env.ui.placeToken(player, slot);
-            slotToPlayer[player][slot] = true;
+            int index = slot * tokenWords + player / 64;
+            long bit = 1L << player, tokens;
+            do {
+                tokens = slotTokens.get(index);
+            } while ((tokens & bit) == 0 && !slotTokens.compareAndSet(index, tokens, tokens | bit));
         }
     }
 
@@ -144,11 +321,151 @@ public class Table {
      * @return       - true iff a token was successfully removed.
      */
     public boolean removeToken(int player, int slot) {
-        if (slotToCard[slot] != null) {
+        // a token left on a removed card is cleared as well, so it does not show on the next card in the slot
+        int index = slot * tokenWords + player / 64;
+        long bit = 1L << player, tokens;
+        do {
+            tokens = slotTokens.get(index);
+        } while ((tokens & bit) != 0 && !slotTokens.compareAndSet(index, tokens, tokens & ~bit));
+        if (snapshot.card(slot) != EMPTY) {
             env.ui.removeToken(player, slot);
-            slotToPlayer[player][slot] = false;
             return true;
         }
         return false;
     }
+
+    /**
+     * @param player - the player id.
+     * @param slot   - the slot.
+     * @return       - true iff the player has a token on the slot.
+     */
+    public boolean hasToken(int player, int slot) {
+        return (tokens(slot, player / 64) & 1L << player) != 0;
+    }
+
+    /**
+     * Reads the players with a token on a slot, 64 players at a time: bit i of word w stands for player w * 64 + i.
+     * With up to 64 players, word 0 holds all of them.
+     *
+     * @param slot - the slot.
+     * @param word - the index of the word, from 0 to tokenWords() - 1.
+     * @return     - the bitmask of the players with a token on the slot among players word * 64 to word * 64 + 63.
+     */
+    public long tokens(int slot, int word) {
+        return slotTokens.get(slot * tokenWords + word);
+    }
+
+    /**
+     * @return - the number of words of each slot's bitmask of players (see tokens).
+     */
+    public int tokenWords() {
+        return tokenWords;
+    }
+
+    /**
+     * Takes the slots of a set claim for a player, all of them or none. The slots are taken in ascending order, and a
+     * slot held by another player's claim is waited for (claims are settled without blocking), so claims never wait
+     * for each other in a cycle. A slot whose card the dealer is changing or was already taken, or that is not on the
+     * table at all, fails the claim.
+     * While the player holds the slots their cards do not change, so a snapshot read afterwards shows their cards.
+     *
+     * @param player - the claiming player.
+     * @param slots  - the slots of the claim, in ascending order.
+     * @return       - true iff the player now holds all the slots.
+     */
+    public boolean claimSlots(int player, int[] slots) {
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] < 0 || slots[i] >= slotOwners.length()) {
+                releaseSlots(slots, i);
+                return false;
+            }
+            int owner;
+            while ((owner = slotOwners.get(slots[i])) != player && !slotOwners.compareAndSet(slots[i], FREE, player)) {
+                if (owner < 0 && owner != FREE) {
+                    releaseSlots(slots, i);
+                    return false;
+                }
+                Thread.yield();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gives back the slots of a claim that was not a legal set.
+     */
+    public void releaseSlots(int[] slots) {
+        releaseSlots(slots, slots.length);
+    }
+
+    private void releaseSlots(int[] slots, int count) {
+        for (int i = 0; i < count; i++)
+            slotOwners.set(slots[i], FREE);
+    }
+
+    /**
+     * Marks the slots of a legal set claim as taken, and queues them for the dealer to remove their cards.
+     */
+    public void takeSlots(int[] slots) {
+        for (int slot : slots)
+            slotOwners.set(slot, TAKEN);
+        takenSets.add(slots);
+    }
+
+    /**
+     * Takes a slot for the dealer, before its card is changed.
+     *
+     * @return - true iff the slot was free (and now belongs to the dealer), false if a claim holds it.
+     */
+    boolean lockSlot(int slot) {
+        return slotOwners.compareAndSet(slot, FREE, DEALER);
+    }
+
+    /**
+     * Frees a slot taken by the dealer (see lockSlot), or a taken slot whose card the dealer removed.
+     */
+    void unlockSlot(int slot) {
+        slotOwners.set(slot, FREE);
+    }
+
+    /**
+     * An immutable copy of the cards on the table, stamped with the epoch it was published at. Two snapshots of the
+     * same table hold the same cards if their epochs are equal.
+     */
+    public static final class Snapshot {
+
+        private final long epoch;
+        private final int[] slotToCard;
+
+        private Snapshot(long epoch, int[] slotToCard) {
+            this.epoch = epoch;
+            this.slotToCard = slotToCard;
+        }
+
+        /**
+         * @return - the number of changes made to the table before this snapshot was published.
+         */
+        public long epoch() {
+            return epoch;
+        }
+
+        /**
+         * @param slot - the slot.
+         * @return     - the card in the slot, or EMPTY if none.
+         */
+        public int card(int slot) {
+            return slotToCard[slot];
+        }
+
+        /**
+         * @param card - the card id.
+         * @return     - the slot of the card, or EMPTY if it is not on the table.
+         */
+        public int slotOf(int card) {
+            for (int slot = 0; slot < slotToCard.length; ++slot)
+                if (slotToCard[slot] == card)
+                    return slot;
+            return EMPTY;
+        }
+    }
 }
@@ -0,0 +1,373 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UtilImplTest {
+
+    UtilImpl util;
+    Config config;
+
+    @BeforeEach
+    void setUp() {
+        config = config(3, 4);
+        util = new UtilImpl(config);
+    }
+
+    private static Config config(int featureSize, int featureCount, String... keyValues) {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", Integer.toString(featureSize));
+        properties.put("FeatureCount", Integer.toString(featureCount));
+        for (int i = 0; i < keyValues.length; i += 2)
+            properties.put(keyValues[i], keyValues[i + 1]);
+        return new Config(new MockLogger(), properties);
+    }
+
+    private static List<Integer> fullDeck(Config config) {
+        return IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+    }
+
+    /**
+     * The sets of a deck as a sorted collection of strings, so that results can be compared regardless of order.
+     */
+    private static Set<String> asSet(List<int[]> sets) {
+        return sets.stream().map(Arrays::toString).collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    /**
+     * Brute force reference: tests every triple of the deck.
+     */
+    private Set<String> referenceTriples(List<Integer> deck) {
+        List<int[]> sets = new ArrayList<>();
+        for (int i = 0; i < deck.size(); ++i)
+            for (int j = i + 1; j < deck.size(); ++j)
+                for (int k = j + 1; k < deck.size(); ++k) {
+                    int[] cards = {deck.get(i), deck.get(j), deck.get(k)};
+                    Arrays.sort(cards);
+                    if (util.testSet(cards)) sets.add(cards);
+                }
+        return asSet(sets);
+    }
+
+    @Test
+    void findSets_FullDeckHas1080Sets() {
+        assertEquals(1080, util.findSets(fullDeck(config), Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    void findSets_MatchesBruteForceOnRandomTables() {
+        Random random = new Random(42);
+        List<Integer> deck = fullDeck(config);
+        for (int round = 0; round < 50; ++round) {
+            Collections.shuffle(deck, random);
+            List<Integer> table = new ArrayList<>(deck.subList(0, 12));
+            assertEquals(referenceTriples(table), asSet(util.findSets(table, Integer.MAX_VALUE)));
+        }
+    }
+
+    @Test
+    void findSets_StopsAtCount() {
+        List<int[]> sets = util.findSets(fullDeck(config), 5);
+        assertEquals(5, sets.size());
+        sets.forEach(set -> assertTrue(util.testSet(set)));
+    }
+
+    @Test
+    void findSets_NoSetsInCapSet() {
+        // a maximal cap set in 3^2: the 4 cards with features (0,0), (0,1), (1,0), (1,1)
+        List<Integer> deck = Arrays.asList(0, 1, 3, 4);
+        assertTrue(util.findSets(deck, Integer.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    void testSet_AgreesWithArrayVersion() {
+        for (int a = 0; a < config.deckSize; a += 7)
+            for (int b = 0; b < config.deckSize; b += 5)
+                for (int c = 0; c < config.deckSize; c += 3)
+                    assertEquals(util.testSet(new int[]{a, b, c}), util.testSet(a, b, c));
+    }
+
+    @Test
+    void cardToFeatures_ReadsDigitsInFeatureSizeBase() {
+        // 65 = 2*27 + 1*9 + 0*3 + 2
+        assertArrayEquals(new int[]{2, 1, 0, 2}, util.cardToFeatures(65));
+    }
+
+    @Test
+    void completeSet_CompletesToALegalSet() {
+        UtilImpl util = new UtilImpl(config(4, 3));
+        Random random = new Random(7);
+        for (int round = 0; round < 200; ++round) {
+            int[] cards = random.ints(0, 64).distinct().limit(3).toArray();
+            int missing = util.completeSet(cards);
+            if (missing >= 0) {
+                assertTrue(util.testSet(new int[]{cards[0], cards[1], cards[2], missing}));
+            } else {
+                for (int card = 0; card < 64; ++card)
+                    assertFalse(util.testSet(new int[]{cards[0], cards[1], cards[2], card}));
+            }
+        }
+    }
+
+    @Test
+    void findSets_ParallelMatchesSerial() {
+        for (Config config : new Config[]{config(3, 6), config(4, 3)}) {
+            UtilImpl util = new UtilImpl(config);
+            List<Integer> deck = fullDeck(config);
+            assertEquals(asSet(util.findSets(deck, Integer.MAX_VALUE, false)),
+                    asSet(util.findSets(deck, Integer.MAX_VALUE, true)));
+        }
+    }
+
+    @Test
+    void findSets_ParallelStopsAtCount() {
+        UtilImpl util = new UtilImpl(config(3, 6));
+        List<int[]> sets = util.findSets(fullDeck(config(3, 6)), 10, true);
+        assertEquals(10, sets.size());
+        sets.forEach(set -> assertTrue(util.testSet(set)));
+    }
+
+    @Test
+    void streamSets_MatchesFindSets() {
+        Config config = config(3, 5);
+        UtilImpl util = new UtilImpl(config);
+        int[] deck = IntStream.range(0, config.deckSize).toArray();
+        Set<String> expected = asSet(util.findSets(fullDeck(config), Integer.MAX_VALUE));
+        assertEquals(expected, asSet(util.streamSets(deck, deck.length).collect(Collectors.toList())));
+        assertEquals(expected, asSet(util.streamSets(deck, deck.length).parallel().collect(Collectors.toList())));
+        assertEquals(7, util.streamSets(deck, deck.length).limit(7).count());
+    }
+
+    @Test
+    void forEachSet_StopsWhenTheVisitorSaysSo() {
+        int[] deck = IntStream.range(0, config.deckSize).toArray();
+        int[] visited = {0};
+        util.forEachSet(deck, deck.length, set -> ++visited[0] < 3);
+        assertEquals(3, visited[0]);
+
+        // only the first 3 cards (0, 1, 2) are searched, and they form a single set
+        visited[0] = 0;
+        util.forEachSet(deck, 3, set -> {
+            assertArrayEquals(new int[]{0, 1, 2}, set);
+            return ++visited[0] > 0;
+        });
+        assertEquals(1, visited[0]);
+    }
+
+    @Test
+    void countSets_MatchesFindSets() {
+        for (Config config : new Config[]{config(3, 4), config(4, 3)}) {
+            UtilImpl util = new UtilImpl(config);
+            List<Integer> deck = fullDeck(config);
+            Collections.shuffle(deck, new Random(11));
+            int[] cards = deck.stream().mapToInt(Integer::intValue).toArray();
+            for (int length : new int[]{3, 12, 20, cards.length})
+                assertEquals(util.findSets(deck.subList(0, length), Integer.MAX_VALUE).size(), util.countSets(cards, length));
+        }
+    }
+
+    @Test
+    void countSetsPerCard_SumsToSetSize() {
+        for (Config config : new Config[]{config(3, 4), config(4, 3)}) {
+            UtilImpl util = new UtilImpl(config);
+            int[] cards = IntStream.range(0, config.deckSize).toArray();
+            int[] counts = util.countSetsPerCard(cards, cards.length);
+            int sets = util.countSets(cards, cards.length);
+            assertEquals(sets * config.featureSize, Arrays.stream(counts).sum());
+            // in a full deck every card belongs to the same number of sets
+            assertEquals(1, Arrays.stream(counts).distinct().count());
+        }
+    }
+
+    @Test
+    void testSets_AgreesWithTestSet() {
+        for (Config config : new Config[]{config(3, 4), config(3, 8), config(4, 3)}) {
+            UtilImpl util = new UtilImpl(config);
+            Random random = new Random(5);
+            int count = 1000;
+            int[] triples = new int[count * 3];
+            for (int i = 0; i < count; ++i) {
+                triples[3 * i] = random.nextInt(config.deckSize);
+                triples[3 * i + 1] = random.nextInt(config.deckSize);
+                // make a fair share of the candidates legal sets
+                triples[3 * i + 2] = i % 2 == 0 && config.featureSize == 3
+                        ? util.completeSet(new int[]{triples[3 * i], triples[3 * i + 1]})
+                        : random.nextInt(config.deckSize);
+            }
+            long[] result = new long[(count + 63) / 64];
+            util.testSets(triples, count, result);
+            for (int i = 0; i < count; ++i) {
+                boolean expected = util.testSet(new int[]{triples[3 * i], triples[3 * i + 1], triples[3 * i + 2]});
+                assertEquals(expected, (result[i / 64] & (1L << i)) != 0);
+            }
+        }
+    }
+
+    /**
+     * Brute force reference for any feature size: tests every combination of featureSize cards of the deck.
+     */
+    private static Set<String> referenceSets(UtilImpl util, List<Integer> deck, int[] combination, int depth, int from,
+                                             Set<String> sets) {
+        for (int i = from; i < deck.size(); ++i) {
+            combination[depth] = deck.get(i);
+            if (depth < combination.length - 1)
+                referenceSets(util, deck, combination, depth + 1, i + 1, sets);
+            else if (util.testSet(combination)) {
+                int[] set = combination.clone();
+                Arrays.sort(set);
+                sets.add(Arrays.toString(set));
+            }
+        }
+        return sets;
+    }
+
+    @Test
+    void findSets_PrunedSearchMatchesBruteForce() {
+        for (Config config : new Config[]{config(4, 3), config(5, 2), config(4, 4)}) {
+            UtilImpl util = new UtilImpl(config);
+            List<Integer> deck = fullDeck(config);
+            Collections.shuffle(deck, new Random(13));
+            List<Integer> cards = new ArrayList<>(deck.subList(0, Math.min(40, deck.size())));
+            Set<String> expected = referenceSets(util, cards, new int[config.featureSize], 0, 0, new TreeSet<>());
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, asSet(util.findSets(cards, Integer.MAX_VALUE)));
+        }
+    }
+
+    private static Config cacheConfig(boolean canonical) {
+        return config(3, 4, "SetCacheSize", "2", "SetCacheCanonical", Boolean.toString(canonical));
+    }
+
+    @Test
+    void cache_HitsOnSameCardsInAnyOrder() {
+        UtilCacheDecorator cache = new UtilCacheDecorator(new MockLogger(), cacheConfig(false), util);
+        List<Integer> deck = fullDeck(config);
+        Collections.shuffle(deck, new Random(17));
+        List<Integer> cards = new ArrayList<>(deck.subList(0, 12));
+        Set<String> expected = asSet(util.findSets(cards, Integer.MAX_VALUE));
+
+        assertEquals(expected, asSet(cache.findSets(cards, Integer.MAX_VALUE)));
+        Collections.reverse(cards);
+        assertEquals(expected, asSet(cache.findSets(cards, Integer.MAX_VALUE)));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+
+        // an entry cut short by a small count is searched again for a larger one
+        List<Integer> other = new ArrayList<>(deck.subList(12, 40));
+        assertEquals(1, cache.findSets(other, 1).size());
+        assertEquals(asSet(util.findSets(other, Integer.MAX_VALUE)), asSet(cache.findSets(other, Integer.MAX_VALUE)));
+        assertEquals(3, cache.misses());
+    }
+
+    @Test
+    void cache_ForEachSetResumesAnEntryCutShort() {
+        UtilCacheDecorator cache = new UtilCacheDecorator(new MockLogger(), cacheConfig(false), util);
+        List<Integer> deck = fullDeck(config);
+        Collections.shuffle(deck, new Random(23));
+        int[] cards = deck.stream().limit(20).mapToInt(Integer::intValue).toArray();
+        Set<String> expected = asSet(util.findSets(deck.subList(0, 20), Integer.MAX_VALUE));
+
+        int[] visited = {0};
+        cache.forEachSet(cards, cards.length, set -> ++visited[0] < 2);
+        List<int[]> sets = new ArrayList<>();
+        cache.forEachSet(cards, cards.length, set -> sets.add(set.clone()));
+        assertEquals(expected.size(), sets.size());
+        assertEquals(expected, asSet(sets));
+        assertEquals(2, cache.misses());
+
+        assertEquals(expected.size(), cache.countSets(cards, cards.length));
+        assertEquals(1, cache.hits());
+    }
+
+    @Test
+    void cache_CanonicalSharesEntryAcrossFeaturePermutations() {
+        UtilCacheDecorator cache = new UtilCacheDecorator(new MockLogger(), cacheConfig(true), util);
+        List<Integer> deck = fullDeck(config);
+        Collections.shuffle(deck, new Random(19));
+        List<Integer> cards = new ArrayList<>(deck.subList(0, 15));
+        // the same cards with the first two features swapped
+        List<Integer> swapped = new ArrayList<>();
+        for (int card : cards) {
+            int[] features = util.cardToFeatures(card);
+            int first = features[0];
+            features[0] = features[1];
+            features[1] = first;
+            for (int other = 0; other < config.deckSize; ++other)
+                if (Arrays.equals(features, util.cardToFeatures(other))) swapped.add(other);
+        }
+
+        assertEquals(asSet(util.findSets(cards, Integer.MAX_VALUE)), asSet(cache.findSets(cards, Integer.MAX_VALUE)));
+        assertEquals(asSet(util.findSets(swapped, Integer.MAX_VALUE)), asSet(cache.findSets(swapped, Integer.MAX_VALUE)));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void tableFile_LoadedTablesMatchComputed(@TempDir Path directory) throws IOException {
+        for (int[] geometry : new int[][]{{3, 4}, {4, 3}}) {
+            Config config = config(geometry[0], geometry[1], "TableCacheDirectory", directory.toString());
+            Path file = SetTableFile.path(directory.toString(), config);
+
+            UtilImpl computed = new UtilImpl(config);
+            assertTrue(Files.isRegularFile(file));
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            UtilImpl loaded = new UtilImpl(config);
+            assertEquals(modified, Files.getLastModifiedTime(file).toMillis());
+
+            List<Integer> deck = fullDeck(config);
+            assertEquals(asSet(computed.findSets(deck, Integer.MAX_VALUE)), asSet(loaded.findSets(deck, Integer.MAX_VALUE)));
+            for (int card = 0; card < config.deckSize; ++card)
+                assertArrayEquals(computed.cardToFeatures(card), loaded.cardToFeatures(card));
+        }
+    }
+
+    @Test
+    void tableFile_CorruptFileIsRebuilt(@TempDir Path directory) throws IOException {
+        Config config = config(3, 4, "TableCacheDirectory", directory.toString());
+        Path file = SetTableFile.path(directory.toString(), config);
+        Files.write(file, new byte[]{1, 2, 3});
+
+        UtilImpl util = new UtilImpl(config);
+        assertEquals(1080, util.countSets(IntStream.range(0, config.deckSize).toArray(), config.deckSize));
+        assertNotNull(SetTableFile.load(file, config, 2, 2));
+    }
+
+    @Test
+    void tableFile_ChangedEntryFailsTheChecksum(@TempDir Path directory) throws IOException {
+        Config config = config(3, 4, "TableCacheDirectory", directory.toString());
+        Path file = SetTableFile.path(directory.toString(), config);
+        new UtilImpl(config);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(file, bytes);
+
+        assertNull(SetTableFile.load(file, config, 2, 2));
+        UtilImpl util = new UtilImpl(config);
+        assertEquals(1080, util.countSets(IntStream.range(0, config.deckSize).toArray(), config.deckSize));
+        assertNotNull(SetTableFile.load(file, config, 2, 2));
+    }
+
+    static class MockLogger extends Logger {
+        protected MockLogger() {
+            super("", null);
+        }
+    }
+}
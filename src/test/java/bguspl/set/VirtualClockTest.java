@@ -0,0 +1,145 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VirtualClockTest {
+
+    VirtualClock clock;
+
+    @BeforeEach
+    void setUp() {
+        clock = new VirtualClock();
+    }
+
+    @AfterEach
+    void tearDown() {
+        clock.close();
+    }
+
+    @Test
+    void sleep_SkipsTheWholeDelay() throws InterruptedException {
+        clock.register();
+        long start = System.nanoTime();
+        clock.sleep(60_000);
+        clock.sleep(500);
+        assertEquals(60_500, clock.currentTimeMillis());
+        assertTrue(System.nanoTime() - start < 10_000_000_000L);
+    }
+
+    @Test
+    void await_WokenBySignalBeforeTheDeadline() throws InterruptedException {
+        Lock lock = new ReentrantLock();
+        Condition signalled = lock.newCondition();
+        CountDownLatch registered = new CountDownLatch(1);
+        clock.register();
+        Thread signaller = new Thread(() -> {
+            clock.register();
+            registered.countDown();
+            try {
+                clock.sleep(1_000);
+                lock.lock();
+                try {
+                    clock.signalAll(signalled);
+                } finally {
+                    lock.unlock();
+                }
+            } catch (InterruptedException ignored) {
+            } finally {
+                clock.unregister();
+            }
+        });
+        signaller.start();
+        registered.await();
+        lock.lock();
+        try {
+            clock.await(lock, signalled, 5_000);
+        } finally {
+            lock.unlock();
+        }
+        signaller.join();
+        // time cannot pass the signaller's deadline before the signaller is done with it
+        assertEquals(1_000, clock.currentTimeMillis());
+    }
+
+    @Test
+    void await_TimeStandsStillWhileAParticipantIsBusy() throws InterruptedException {
+        Object busy = new Object();
+        boolean[] done = {false};
+        Thread participant = new Thread(() -> {
+            clock.register();
+            synchronized (busy) {
+                while (!done[0]) {
+                    try {
+                        busy.wait();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            }
+            clock.unregister();
+        });
+        participant.start();
+        Thread.sleep(50);
+        Thread sleeper = new Thread(() -> {
+            try {
+                clock.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+        });
+        sleeper.start();
+        sleeper.join(200);
+        assertTrue(sleeper.isAlive());
+        assertEquals(0, clock.currentTimeMillis());
+
+        synchronized (busy) {
+            done[0] = true;
+            busy.notifyAll();
+        }
+        participant.join();
+        sleeper.join();
+        assertEquals(100, clock.currentTimeMillis());
+    }
+
+    @Test
+    void sleep_OtherThreadsDoNotSlowDownTheParticipants() throws InterruptedException {
+        CountDownLatch registered = new CountDownLatch(1);
+        AtomicReference<Thread> poller = new AtomicReference<>();
+        Thread participant = new Thread(() -> {
+            clock.register();
+            registered.countDown();
+            // time stands still until this participant waits, so the poller is waiting for its 1 ms by then
+            while (poller.get() == null || poller.get().getState() != Thread.State.WAITING)
+                Thread.yield();
+            try {
+                clock.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+            clock.unregister();
+        });
+        participant.start();
+        registered.await();
+
+        // a thread that is not a participant waits for a shorter time, but the time jumps to the participant's deadline
+        Thread sleeper = new Thread(() -> {
+            try {
+                clock.sleep(1);
+            } catch (InterruptedException ignored) {
+            }
+        });
+        poller.set(sleeper);
+        sleeper.start();
+        sleeper.join();
+        participant.join();
+        assertEquals(100, clock.currentTimeMillis());
+        assertEquals(1, clock.steps());
+    }
+}
@@ -0,0 +1,130 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.VirtualClock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ComputerPlayerSchedulerTest {
+
+    /**
+     * A computer player that only counts the key presses made for it. Its key buffer is full after capacity key
+     * presses, until the test empties it.
+     */
+    static class CountingPlayer extends Player {
+
+        volatile int attempts;
+        volatile int pressed;
+        volatile int capacity = Integer.MAX_VALUE;
+
+        /**
+         * Called on the worker thread when the buffer is found full, as if the player handled a key meanwhile.
+         */
+        volatile Runnable onFull;
+
+        CountingPlayer(Env env, int id) {
+            super(env, null, null, id, false);
+        }
+
+        @Override
+        ComputerPlayerScheduler.KeyPress pressRandomKey() {
+            ++attempts;
+            if (pressed == capacity) {
+                Runnable handled = onFull;
+                if (handled != null) handled.run();
+                return ComputerPlayerScheduler.KeyPress.BUFFER_FULL;
+            }
+            ++pressed;
+            return ComputerPlayerScheduler.KeyPress.PRESSED;
+        }
+    }
+
+    VirtualClock clock;
+    Env env;
+    ComputerPlayerScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        clock = new VirtualClock();
+        Config config = TableTest.config("ComputerActionsPerSecond", "10");
+        env = new Env(new TableTest.MockLogger(), config, new TableTest.MockUserInterface(), new TableTest.MockUtil(),
+                clock);
+        scheduler = new ComputerPlayerScheduler(env, 1);
+        scheduler.start();
+        // the test thread takes part in the timing, so the time only moves while it sleeps
+        clock.register();
+    }
+
+    @AfterEach
+    void tearDown() {
+        clock.unregister();
+        scheduler.close();
+        clock.close();
+    }
+
+    @Test
+    void schedule_PressesKeysAtTheConfiguredRate() throws InterruptedException {
+        CountingPlayer player = new CountingPlayer(env, 0);
+        scheduler.schedule(player);
+
+        clock.sleep(10_000);
+
+        // a key every 100 ms from time 0, and maybe the one due at the end of the sleep
+        assertTrue(player.pressed >= 100 && player.pressed <= 101, "pressed " + player.pressed);
+    }
+
+    @Test
+    void wake_ResumesAPlayerParkedOnAFullBuffer() throws InterruptedException {
+        CountingPlayer player = new CountingPlayer(env, 0);
+        player.capacity = 3;
+        scheduler.schedule(player);
+
+        clock.sleep(10_000);
+        // three keys, then one attempt that found the buffer full, and no more attempts while parked
+        assertEquals(3, player.pressed);
+        assertEquals(4, player.attempts);
+
+        player.capacity = 6;
+        scheduler.wake(player);
+        clock.sleep(10_000);
+        assertEquals(6, player.pressed);
+        assertEquals(8, player.attempts);
+    }
+
+    @Test
+    void wake_WhileAKeyIsPressedIsNotLost() throws InterruptedException {
+        CountingPlayer player = new CountingPlayer(env, 0);
+        player.capacity = 3;
+        // the player handles a key (and wakes the scheduler) while the worker finds its buffer full
+        player.onFull = () -> {
+            player.onFull = null;
+            player.capacity = 4;
+            scheduler.wake(player);
+        };
+        scheduler.schedule(player);
+
+        clock.sleep(10_000);
+
+        // the worker tried again at once instead of parking, and pressed the fourth key
+        assertEquals(4, player.pressed);
+        assertEquals(6, player.attempts);
+    }
+
+    @Test
+    void cancel_StopsTheKeyPresses() throws InterruptedException {
+        CountingPlayer player = new CountingPlayer(env, 0);
+        scheduler.schedule(player);
+        clock.sleep(1_050);
+        scheduler.cancel(player);
+        int pressed = player.pressed;
+
+        clock.sleep(10_000);
+
+        assertEquals(11, pressed);
+        assertEquals(pressed, player.pressed);
+    }
+}
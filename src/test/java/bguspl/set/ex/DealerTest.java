@@ -4,14 +4,21 @@ import bguspl.set.Config;
 import bguspl.set.Env;
 import bguspl.set.UserInterface;
 import bguspl.set.Util;
+import bguspl.set.UtilImpl;
+import bguspl.set.VirtualClock;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class DealerTest {
 
@@ -42,7 +49,7 @@ class DealerTest {
         players = new Player[1];
         players[0] = pl;
         env = new Env(logger, config, new TableTest.MockUserInterface(), new TableTest.MockUtil());
-        table = new Table(env, new Integer[config.tableSize], new Integer[config.deckSize]);
+        table = new Table(env);
         dealer = new Dealer(env,  table, players);
        // assertDeck();
     }
@@ -79,6 +86,116 @@ class DealerTest {
         assertEquals(expectedNumOfCards, table.countCards());
 
     }
+    @Test
+    void removeCardsFromTable_SettlesAllPendingClaimsInOnePass() {
+        Env env = new Env(this.env.logger, this.env.config, new TableTest.MockUserInterface(), new UtilImpl(this.env.config));
+        Table table = new Table(env);
+        Player[] players = new Player[2];
+        Dealer dealer = new Dealer(env, table, players);
+        players[0] = new Player(env, dealer, table, 0, true);
+        players[1] = new Player(env, dealer, table, 1, true);
+        for (int slot = 0; slot < 4; slot++)
+            table.placeCard(slot, slot);
+
+        // cards 0, 1 and 2 are a set, and the second claim shares two of its cards
+        for (int slot : new int[]{0, 1, 2})
+            players[0].placeToken(slot);
+        for (int slot : new int[]{0, 1, 3})
+            players[1].placeToken(slot);
+        table.setQueue.add(0);
+        table.setQueue.add(1);
+
+        dealer.removeCardsFromTable();
+
+        assertTrue(table.setQueue.isEmpty());
+        assertEquals(1, table.countCards());
+        assertArrayEquals(new int[]{-1, -1, -1}, players[0].getTokens());
+        assertArrayEquals(new int[]{-1, -1, 3}, players[1].getTokens());
+    }
+
+    /**
+     * Plays the first turn of a game with no players on virtual time, and returns the countdown updates the dealer
+     * made in it up to the reshuffle: the virtual time of each update, the time left it showed, and 1 if it was a warning (0 otherwise).
+     */
+    private static List<long[]> countdownUpdates(long turnSeconds, long warningSeconds) {
+        VirtualClock clock = new VirtualClock();
+        try {
+            Config config = TableTest.config("TurnTimeoutSeconds", Long.toString(turnSeconds),
+                    "TurnTimeoutWarningSeconds", Long.toString(warningSeconds));
+            List<long[]> updates = new ArrayList<>();
+            Dealer[] dealer = new Dealer[1];
+            UserInterface ui = new TableTest.MockUserInterface() {
+                @Override
+                public void setCountdown(long millies, boolean warn) {
+                    if (!updates.isEmpty() && updates.get(updates.size() - 1)[1] <= 0) return; // the turn is over
+                    updates.add(new long[]{clock.currentTimeMillis(), millies, warn ? 1 : 0});
+                    if (millies <= 0) dealer[0].terminate();
+                }
+            };
+            Env env = new Env(new MockLogger(), config, ui, new UtilImpl(config), clock);
+            dealer[0] = new Dealer(env, new Table(env), new Player[0]);
+            dealer[0].run();
+            return updates;
+        } finally {
+            clock.close();
+        }
+    }
+
+    @Test
+    void timerLoop_WakesOncePerDisplayedSecondOutsideTheWarning() {
+        List<long[]> updates = countdownUpdates(10, 3);
+
+        long[] first = updates.get(0);
+        assertEquals(1000, first[0]); // the turn starts at 10.999 seconds and shows 9.999 a second later
+        int seconds = 0;
+        for (long[] update : updates) {
+            if (update[2] == 1) break;
+            assertEquals(first[0] + 1000 * seconds, update[0]);
+            assertEquals(first[1] - 1000 * seconds, update[1]);
+            ++seconds;
+        }
+        // 9.999 down to 3.999, and then the warning starts at 3.000
+        assertEquals(7, seconds);
+    }
+
+    @Test
+    void timerLoop_WakesEveryRefreshDuringTheWarning() {
+        List<long[]> updates = countdownUpdates(10, 3);
+
+        List<long[]> warnings = new ArrayList<>();
+        for (long[] update : updates)
+            if (update[2] == 1) warnings.add(update);
+        assertEquals(3000, warnings.get(0)[1]);
+        for (int i = 1; i < warnings.size(); ++i) {
+            assertEquals(100, warnings.get(i)[0] - warnings.get(i - 1)[0]);
+            assertEquals(warnings.get(i - 1)[1] - 100, warnings.get(i)[1]);
+        }
+        assertEquals(0, warnings.get(warnings.size() - 1)[1]);
+        assertEquals(31, warnings.size());
+    }
+
+    @Test
+    void sleepUntilWokenOrTimeout_SettlesAClaimQueuedBeforeTheWait() {
+        VirtualClock clock = new VirtualClock();
+        try {
+            Env env = new Env(this.env.logger, this.env.config, new TableTest.MockUserInterface(), this.env.util, clock);
+            Table table = new Table(env);
+            Dealer dealer = new Dealer(env, table, new Player[1]);
+
+            // queued without signalling the dealer, as a claim made just before the dealer waits is
+            table.setQueue.add(0);
+            dealer.sleepUntilWokenOrTimeout();
+            assertEquals(0, clock.currentTimeMillis());
+
+            // with no claim, the dealer sleeps until its next deadline
+            table.setQueue.clear();
+            dealer.sleepUntilWokenOrTimeout();
+            assertFalse(clock.currentTimeMillis() == 0);
+        } finally {
+            clock.close();
+        }
+    }
+
     static class MockUserInterface implements UserInterface {
         @Override
         public void dispose() {}
@@ -122,11 +239,42 @@ class DealerTest {
             return false;
         }
 
+        @Override
+        public boolean testSet(int first, int second, int third) {
+            return false;
+        }
+
+        @Override
+        public void testSets(int[] triples, int count, long[] result) {}
+
+        @Override
+        public int completeSet(int[] cards) {
+            return -1;
+        }
+
         @Override
         public List<int[]> findSets(List<Integer> deck, int count) {
             return null;
         }
 
+        @Override
+        public void forEachSet(int[] cards, int length, SetVisitor visitor) {}
+
+        @Override
+        public Stream<int[]> streamSets(int[] cards, int length) {
+            return Stream.empty();
+        }
+
+        @Override
+        public int countSets(int[] cards, int length) {
+            return 0;
+        }
+
+        @Override
+        public int[] countSetsPerCard(int[] cards, int length) {
+            return new int[length];
+        }
+
         @Override
         public void spin() {}
     }
@@ -0,0 +1,99 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EndGameOracleTest {
+
+    /**
+     * A UtilImpl that counts the full searches made through it.
+     */
+    static class CountingUtil extends UtilImpl {
+
+        int searches;
+
+        CountingUtil(Config config) {
+            super(config);
+        }
+
+        @Override
+        public void forEachSet(int[] cards, int length, SetVisitor visitor) {
+            ++searches;
+            super.forEachSet(cards, length, visitor);
+        }
+    }
+
+    private Config config;
+    private CountingUtil util;
+    private Table table;
+    private EndGameOracle oracle;
+
+    @BeforeEach
+    void setUp() {
+        config = TableTest.config();
+        util = new CountingUtil(config);
+        Env env = TableTest.env(config, util);
+        table = new Table(env);
+        oracle = new EndGameOracle(env, table);
+    }
+
+    @Test
+    void hasSetsLeft_MoreCardsThanTheLargestCapSetNeedNoSearch() {
+        // 3^4 has cap sets of up to 20 cards, so any 21 cards hold a set
+        IntDeck deck = new IntDeck(config.deckSize);
+        for (int card = 0; card < 21; ++card)
+            deck.add(card);
+
+        assertTrue(oracle.hasSetsLeft(deck));
+        assertEquals(0, util.searches);
+    }
+
+    @Test
+    void hasSetsLeft_EmptyDeckWithASetOnTheTable() {
+        // cards 0, 1, 2 differ only in their last feature, so they form a set
+        for (int slot = 0; slot < 3; ++slot)
+            table.placeCard(slot, slot);
+
+        assertTrue(oracle.hasSetsLeft(new IntDeck(config.deckSize)));
+    }
+
+    @Test
+    void hasSetsLeft_EmptyDeckWithNoSetOnTheTable() {
+        int[] cards = {0, 1, 3, 4};
+        for (int slot = 0; slot < cards.length; ++slot)
+            table.placeCard(cards[slot], slot);
+
+        assertFalse(oracle.hasSetsLeft(new IntDeck(config.deckSize)));
+    }
+
+    @Test
+    void hasSetsLeft_SearchesAgainOnlyWhenTheTableOrTheDeckChange() {
+        table.placeCard(0, 0);
+        table.placeCard(1, 1);
+        table.placeCard(3, 2);
+        IntDeck deck = new IntDeck(config.deckSize);
+        deck.add(4);
+
+        assertFalse(oracle.hasSetsLeft(deck));
+        assertFalse(oracle.hasSetsLeft(deck));
+        assertEquals(1, util.searches);
+
+        // card 2 completes 0 and 1 to a set: a new table version drops the cached verdict
+        table.placeCard(2, 3);
+        assertTrue(oracle.hasSetsLeft(deck));
+        table.removeCard(3);
+        assertFalse(oracle.hasSetsLeft(deck));
+        assertEquals(2, util.searches);
+
+        // the same table with one more card in the deck
+        deck.add(2);
+        assertTrue(oracle.hasSetsLeft(deck));
+        assertTrue(oracle.hasSetsLeft(deck));
+        assertEquals(3, util.searches);
+    }
+}
@@ -0,0 +1,46 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntDeckTest {
+
+    @Test
+    void draw_RemovesEveryCardExactlyOnce() {
+        IntDeck deck = IntDeck.full(81);
+        Random random = new Random(3);
+        boolean[] drawn = new boolean[81];
+        while (!deck.isEmpty()) {
+            int card = deck.draw(random);
+            assertFalse(drawn[card]);
+            drawn[card] = true;
+        }
+        for (boolean wasDrawn : drawn)
+            assertTrue(wasDrawn);
+    }
+
+    @Test
+    void deal_StopsWhenTheDeckRunsOut() {
+        IntDeck deck = IntDeck.full(5);
+        int[] dealt = new int[12];
+        assertEquals(5, deck.deal(new Random(), dealt, 12));
+        assertTrue(deck.isEmpty());
+    }
+
+    @Test
+    void addAll_ReturnsCardsToTheDeck() {
+        IntDeck deck = IntDeck.full(10);
+        int[] dealt = new int[4];
+        deck.deal(new Random(), dealt, 4);
+        assertEquals(6, deck.size());
+
+        deck.addAll(dealt, 4);
+        int[] cards = deck.toArray();
+        Arrays.sort(cards);
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9}, cards);
+    }
+}
@@ -14,7 +14,10 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import java.util.logging.Logger;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -99,4 +102,103 @@ class PlayerTest {
         assertArrayEquals(expectedTokens,tokens);
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void removeTokens_RemovesTheTokensFromTheirSlots() {
+        player.placeToken(5);
+        player.placeToken(7);
+
+        player.removeTokens();
+
+        verify(table).removeToken(eq(player.id), eq(5));
+        verify(table).removeToken(eq(player.id), eq(7));
+    }
+
+    @Test
+    void removeToken_OnlyCountsTokensThatWereThere() {
+        player.placeToken(0);
+        player.placeToken(1);
+
+        player.removeToken(4);
+        assertEquals(2, player.numOfTokens);
+        player.removeToken(1);
+        assertEquals(1, player.numOfTokens);
+    }
+
+    @Test
+    void settleClaim_DropsAClaimThatLostAToken() {
+        player.placeToken(0);
+        player.placeToken(1);
+        player.placeToken(2);
+        // the dealer takes a card away between the third token and the claim
+        player.removeToken(1);
+
+        player.settleClaim();
+
+        verify(table, never()).claimSlots(anyInt(), any());
+        assertEquals(0, player.score());
+    }
+
+    @Test
+    void settleClaim_DropsAClaimWhoseCardChanged() {
+        Env env = TableTest.env(TableTest.config(), new TableTest.MockUtil() {
+            @Override
+            public boolean testSet(int first, int second, int third) {
+                return true;
+            }
+        });
+        Player[] claimant = new Player[1];
+        Table table = new Table(env) {
+            @Override
+            public boolean claimSlots(int player, int[] slots) {
+                // the dealer takes a card away and deals a new one into its slot between the third token and the
+                // claim, and the player puts a token on the new card
+                claimant[0].removeToken(1);
+                removeCard(1);
+                placeCard(9, 1);
+                claimant[0].placeToken(1);
+                return super.claimSlots(player, slots);
+            }
+        };
+        for (int slot = 0; slot < 3; slot++)
+            table.placeCard(slot, slot);
+        Player player = new Player(env, dealer, table, 0, false);
+        claimant[0] = player;
+        player.placeToken(0);
+        player.placeToken(1);
+        player.placeToken(2);
+
+        player.settleClaim();
+
+        assertEquals(0, player.score());
+        for (int slot = 0; slot < 3; slot++)
+            assertTrue(table.lockSlot(slot)); // the slots were given back
+    }
+
+    @Test
+    void keyPressed_DropsTokensLeftOnRemovedCards() throws InterruptedException {
+        Env env = TableTest.env(TableTest.config(), new TableTest.MockUtil());
+        Table table = new Table(env);
+        for (int slot = 0; slot < 3; slot++)
+            table.placeCard(slot, slot);
+        table.shouldWait = false;
+        Player player = new Player(env, dealer, table, 0, true);
+
+        // the card is removed while the player places a token on it
+        player.placeToken(0);
+        table.removeCard(0);
+
+        Thread thread = player.createThread();
+        thread.start();
+        player.keyPressed(1);
+        for (int i = 0; i < 500 && player.getTokens()[0] != 1; i++)
+            Thread.sleep(10);
+        int[] tokens = player.getTokens();
+        int numOfTokens = player.numOfTokens;
+        player.terminate();
+        thread.join();
+
+        assertArrayEquals(new int[]{1, -1, -1}, tokens);
+        assertEquals(1, numOfTokens);
+    }
+}
@@ -4,20 +4,27 @@ import bguspl.set.Config;
 import bguspl.set.Env;
 import bguspl.set.UserInterface;
 import bguspl.set.Util;
+import bguspl.set.UtilImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class TableTest {
 
     Table table;
-    private Integer[] slotToCard;
-    private Integer[] cardToSlot;
+    private int[] slotToCard;
+    private int[] cardToSlot;
     //private boolean[][] slotToPlayer;
 
     @BeforeEach
@@ -33,19 +40,37 @@ class TableTest {
         properties.put("PlayerKeys2", "85,73,79,80");
         MockLogger logger = new MockLogger();
         Config config = new Config(logger, properties);
-        slotToCard = new Integer[config.tableSize];
-        cardToSlot = new Integer[config.deckSize];
+        slotToCard = new int[config.tableSize];
+        cardToSlot = new int[config.deckSize];
+        Arrays.fill(slotToCard, Table.EMPTY);
+        Arrays.fill(cardToSlot, Table.EMPTY);
 
         Env env = new Env(logger, config, new MockUserInterface(), new MockUtil());
         table = new Table(env, slotToCard, cardToSlot);
 //        slotToPlayer = new boolean [2][config.tableSize];
     }
 
+    /**
+     * Creates a configuration with the default values, no table delays, and the given key value pairs.
+     */
+    static Config config(String... keyValues) {
+        Properties properties = new Properties();
+        properties.put("TableDelaySeconds", "0");
+        for (int i = 0; i < keyValues.length; i += 2)
+            properties.put(keyValues[i], keyValues[i + 1]);
+        return new Config(new MockLogger(), properties);
+    }
+
+    static Env env(Config config, Util util) {
+        return new Env(new MockLogger(), config, new MockUserInterface(), util);
+    }
+
     private int fillSomeSlots() {
-        slotToCard[1] = 3;
-        slotToCard[2] = 5;
-        cardToSlot[3] = 1;
-        cardToSlot[5] = 2;
+        // placed through the table, so the cards are also published to the players (see Table.snapshot)
+        table.placeCard(3, 1);
+        table.placeCard(5, 2);
+        assertEquals(3, slotToCard[1]);
+        assertEquals(2, cardToSlot[5]);
 
         return 2;
     }
@@ -60,8 +85,8 @@ class TableTest {
     private void placeSomeCardsAndAssert() throws InterruptedException {
         table.placeCard(8, 2);
 
-        assertEquals(8, (int) slotToCard[2]);
-        assertEquals(2, (int) cardToSlot[8]);
+        assertEquals(8, slotToCard[2]);
+        assertEquals(2, cardToSlot[8]);
     }
 
     @Test
@@ -102,12 +127,12 @@ class TableTest {
     private void removeSomeCardsAndAssert() throws InterruptedException {
         table.removeCard(1);
 
-        assertEquals(null, slotToCard[1]);
-        assertEquals(null, cardToSlot[10]);
+        assertEquals(Table.EMPTY, slotToCard[1]);
+        assertEquals(Table.EMPTY, cardToSlot[10]);
     }
     private void placeOneTokenAndAssert() throws InterruptedException {
         table.placeToken(1 , 1);
-        assertEquals(true, table.slotToPlayer[1][1]);
+        assertTrue(table.hasToken(1, 1));
     }
     @Test
     void removeCard_SomeSlotsAreFilled() throws InterruptedException {
@@ -120,6 +145,141 @@ class TableTest {
         placeOneTokenAndAssert();
     }
 
+    @Test
+    void countSets_FollowsPlacementsAndRemovals() {
+        Config config = config();
+        Util util = new UtilImpl(config);
+        Table table = new Table(env(config, util));
+
+        // cards 0, 1, 2 differ only in their last feature, so they form a set
+        table.placeCard(0, 0);
+        table.placeCard(1, 1);
+        assertFalse(table.hasSet());
+        table.placeCard(2, 2);
+
+        List<Integer> cards = new ArrayList<>();
+        for (int slot = 3, card = 5; slot < config.tableSize; ++slot, card += 7) {
+            table.placeCard(card, slot);
+            cards.add(card);
+        }
+        cards.add(0);
+        cards.add(1);
+        cards.add(2);
+        assertEquals(util.findSets(cards, Integer.MAX_VALUE).size(), table.countSets());
+
+        table.removeCard(1);
+        cards.remove(Integer.valueOf(1));
+        assertEquals(util.findSets(cards, Integer.MAX_VALUE).size(), table.countSets());
+        table.sets().forEach(set -> assertTrue(util.testSet(set)));
+    }
+
+    @Test
+    void countSets_IndexesEveryPairForFeatureSizeTwo() {
+        Config config = config("FeatureSize", "2", "FeatureCount", "4");
+        Util util = new UtilImpl(config);
+        Table table = new Table(env(config, util));
+
+        List<Integer> cards = new ArrayList<>();
+        for (int slot = 0; slot < 8; ++slot) {
+            table.placeCard(slot * 2, slot);
+            cards.add(slot * 2);
+        }
+        assertEquals(28, table.countSets());
+        assertEquals(util.findSets(cards, Integer.MAX_VALUE).size(), table.countSets());
+
+        table.removeCard(3);
+        cards.remove(Integer.valueOf(6));
+        assertEquals(21, table.countSets());
+        assertEquals(util.findSets(cards, Integer.MAX_VALUE).size(), table.countSets());
+        table.sets().forEach(set -> assertTrue(util.testSet(set)));
+    }
+
+    @Test
+    void placeToken_ManyPlayersSpanSeveralWords() {
+        Table table = new Table(env(config("ComputerPlayers", "70"), new MockUtil()));
+        table.placeCard(4, 2);
+
+        table.placeToken(3, 2);
+        table.placeToken(67, 2);
+        assertEquals(2, table.tokenWords());
+        assertEquals(1L << 3, table.tokens(2, 0));
+        assertEquals(1L << 3, table.tokens(2, 1));
+        assertTrue(table.hasToken(67, 2));
+        assertFalse(table.hasToken(3, 1));
+
+        table.removeToken(67, 2);
+        assertFalse(table.hasToken(67, 2));
+        assertTrue(table.hasToken(3, 2));
+    }
+
+    @Test
+    void snapshot_IsNotChangedByLaterChanges() {
+        table.placeCard(10, 1);
+        Table.Snapshot before = table.snapshot();
+
+        table.removeCard(1);
+        Table.Snapshot after = table.snapshot();
+
+        assertEquals(10, before.card(1));
+        assertEquals(Table.EMPTY, after.card(1));
+        assertEquals(before.epoch() + 1, after.epoch());
+        assertEquals(after.epoch(), table.version());
+        assertEquals(Table.EMPTY, after.slotOf(10));
+    }
+
+    @Test
+    void claimSlots_AllOrNone() {
+        int[] claim = {1, 2, 3};
+
+        assertTrue(table.lockSlot(3));
+        assertFalse(table.claimSlots(0, claim));
+        assertTrue(table.lockSlot(1)); // the slots taken before the dealer's slot were given back
+        table.unlockSlot(1);
+        table.unlockSlot(3);
+
+        assertTrue(table.claimSlots(0, claim));
+        assertFalse(table.lockSlot(2));
+        table.takeSlots(claim);
+        assertFalse(table.claimSlots(1, new int[]{0, 2, 3}));
+        assertArrayEquals(claim, table.takenSets.poll());
+
+        table.releaseSlots(claim);
+        assertTrue(table.claimSlots(1, new int[]{0, 2, 3}));
+    }
+
+    @Test
+    void claimSlots_SlotOffTheTableFailsTheClaim() {
+        assertFalse(table.claimSlots(0, new int[]{1, 2, slotToCard.length}));
+        assertTrue(table.lockSlot(1)); // the slots taken before it were given back
+        assertTrue(table.lockSlot(2));
+    }
+
+    @Test
+    void placeCards_IsASingleChange() {
+        long epoch = table.version();
+
+        table.placeCards(new int[]{0, 1, 2}, new int[]{3, 0, 1}, 3);
+        assertEquals(epoch + 1, table.version());
+        assertEquals(0, table.slotOf(1));
+        assertEquals(3, table.countCards());
+
+        table.removeCards(new int[]{0, 3}, 2);
+        assertEquals(epoch + 2, table.version());
+        assertEquals(Table.EMPTY, table.snapshot().card(0));
+        assertEquals(2, table.snapshot().card(1));
+    }
+
+    @Test
+    void slotOf_LargeDeckHasNoDeckSizedMap() {
+        Table table = new Table(env(config("FeatureCount", "8"), new MockUtil()));
+
+        assertEquals(null, table.cardToSlot);
+        table.placeCard(6000, 5);
+        assertEquals(5, table.slotOf(6000));
+        table.removeCard(5);
+        assertEquals(Table.EMPTY, table.slotOf(6000));
+    }
+
     static class MockUserInterface implements UserInterface {
         @Override
         public void dispose() {}
@@ -163,11 +323,42 @@ class TableTest {
             return false;
         }
 
+        @Override
+        public boolean testSet(int first, int second, int third) {
+            return false;
+        }
+
+        @Override
+        public void testSets(int[] triples, int count, long[] result) {}
+
+        @Override
+        public int completeSet(int[] cards) {
+            return -1;
+        }
+
         @Override
         public List<int[]> findSets(List<Integer> deck, int count) {
             return null;
         }
 
+        @Override
+        public void forEachSet(int[] cards, int length, SetVisitor visitor) {}
+
+        @Override
+        public Stream<int[]> streamSets(int[] cards, int length) {
+            return Stream.empty();
+        }
+
+        @Override
+        public int countSets(int[] cards, int length) {
+            return 0;
+        }
+
+        @Override
+        public int[] countSetsPerCard(int[] cards, int length) {
+            return new int[length];
+        }
+
         @Override
         public void spin() {}
     }